@@ -0,0 +1,58 @@
+package com.thebluealliance.spectrum.benchmark;
+
+import com.thebluealliance.spectrum.internal.ColorUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per-color work done when a palette is compiled. Each operation covers a whole
+ * palette.
+ */
+@State(Scope.Thread)
+public class ColorUtilBenchmark {
+
+    @Param({"16", "256", "4096", "100000"})
+    public int paletteSize;
+
+    private int[] mColors;
+    private boolean[] mIsDark;
+    private int[] mRippleColors;
+
+    @Setup
+    public void setUp() {
+        mColors = Palettes.randomColors(paletteSize);
+        mIsDark = new boolean[paletteSize];
+        mRippleColors = new int[paletteSize];
+    }
+
+    @Benchmark
+    public boolean[] isColorDark() {
+        ColorUtil.isColorDark(mColors, mIsDark);
+        return mIsDark;
+    }
+
+    @Benchmark
+    public int[] getRippleColors() {
+        ColorUtil.getRippleColors(mColors, mRippleColors);
+        return mRippleColors;
+    }
+
+    /**
+     * The same work as {@link #isColorDark()}, a color at a time, the way
+     * {@code CompiledPalette} packs the results into bits
+     */
+    @Benchmark
+    public long[] isColorDarkPacked() {
+        long[] darkColors = new long[(mColors.length + 63) / 64];
+        for (int i = 0; i < mColors.length; i++) {
+            if (ColorUtil.isColorDark(mColors[i])) {
+                darkColors[i >> 6] |= 1L << i;
+            }
+        }
+        return darkColors;
+    }
+}
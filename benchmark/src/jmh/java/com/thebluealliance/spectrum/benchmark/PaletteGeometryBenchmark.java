@@ -0,0 +1,75 @@
+package com.thebluealliance.spectrum.benchmark;
+
+import com.thebluealliance.spectrum.internal.PaletteGeometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the grid arithmetic that {@code SpectrumPalette} does on every measure pass. Item sizes
+ * are the library's small item dimensions at mdpi.
+ */
+public class PaletteGeometryBenchmark {
+
+    private static final int ITEM_DIMENSION = 48;
+    private static final int ITEM_MARGIN = 4;
+
+    /**
+     * The grid for a given width. Benchmarks that don't depend on the number of colors only take
+     * this state, so that they're only run once per width.
+     */
+    @State(Scope.Thread)
+    public static class Grid {
+
+        /**
+         * Width available to the palette, in px
+         */
+        @Param({"360", "1080", "2560"})
+        public int width;
+
+        private PaletteGeometry mGeometry;
+        private int mColumnCount;
+
+        @Setup
+        public void setUp() {
+            mGeometry = new PaletteGeometry(ITEM_DIMENSION, ITEM_MARGIN);
+            mColumnCount = mGeometry.computeColumnCount(width);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Palette {
+
+        @Param({"16", "256", "4096", "100000"})
+        public int paletteSize;
+    }
+
+    @Benchmark
+    public int computeColumnCount(Grid grid) {
+        return grid.mGeometry.computeColumnCount(grid.width);
+    }
+
+    @Benchmark
+    public int computeWidthForNumColumns(Grid grid) {
+        return grid.mGeometry.computeWidthForNumColumns(grid.mColumnCount);
+    }
+
+    @Benchmark
+    public int computeHeight(Grid grid, Palette palette) {
+        return grid.mGeometry.computeHeight(palette.paletteSize, grid.mColumnCount);
+    }
+
+    /**
+     * Everything one measure pass computes, in the same order
+     */
+    @Benchmark
+    public int measure(Grid grid, Palette palette) {
+        int columnCount = grid.mGeometry.computeColumnCount(grid.width);
+        int gridWidth = grid.mGeometry.computeWidthForNumColumns(columnCount);
+        int padding = (grid.width - gridWidth) / 2;
+        return grid.mGeometry.computeHeight(palette.paletteSize, columnCount) + 2 * padding;
+    }
+}
@@ -0,0 +1,48 @@
+package com.thebluealliance.spectrum;
+
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+
+/**
+ * Supplies the colors of a {@link SpectrumPalette} a page at a time, for palettes that are too
+ * large to load up front, such as catalogs that are read from a database or the network. The
+ * palette shows each page as soon as it arrives, appending its colors after the ones that are
+ * already showing.
+ *
+ * @see SpectrumPalette#setColorSource(ColorSource)
+ */
+public interface ColorSource {
+
+    /**
+     * Returned by {@link #getCount()} when the number of colors isn't known ahead of time
+     */
+    int COUNT_UNKNOWN = -1;
+
+    /**
+     * Called on the main thread before the first page is loaded.
+     *
+     * @return the total number of colors, or {@link #COUNT_UNKNOWN}
+     */
+    int getCount();
+
+    /**
+     * Starts loading the colors from {@code offset} onwards. Only one page is loaded at a time.
+     * The page may be loaded synchronously or on any thread, and may hold fewer or more than
+     * {@code pageSize} colors.
+     *
+     * @param offset   the position of the first color to load
+     * @param pageSize how many colors the palette would like to receive
+     * @param callback must be called exactly once with the page
+     */
+    void loadPage(int offset, int pageSize, @NonNull PageCallback callback);
+
+    interface PageCallback {
+        /**
+         * Delivers a page of colors. May be called from any thread.
+         *
+         * @param colors     the colors from the requested offset onwards
+         * @param endReached true if there are no colors after this page
+         */
+        void onPageLoaded(@NonNull @ColorInt int[] colors, boolean endReached);
+    }
+}
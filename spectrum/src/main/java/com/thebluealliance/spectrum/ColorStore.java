@@ -0,0 +1,64 @@
+package com.thebluealliance.spectrum;
+
+import android.support.annotation.ColorInt;
+
+import java.util.Map;
+
+/**
+ * Where {@link SpectrumPreference}s and {@link SpectrumPreferenceCompat}s read and write their
+ * colors when they aren't using their {@link android.content.SharedPreferences}. Set a store on a
+ * single preference with {@code setColorStore()}, or on every preference created afterwards with
+ * {@link Spectrum#setDefaultColorStore(ColorStore)}.
+ * <p/>
+ * Stores are called from the main thread, so implementations should serve reads from memory and
+ * persist writes asynchronously; see {@link SharedPreferencesColorStore}.
+ */
+public interface ColorStore {
+
+    /**
+     * Receives changes to a store's colors, whether they were written through the store or
+     * directly to whatever backs it.
+     */
+    interface OnColorChangedListener {
+        /**
+         * Called on the main thread after the color stored for {@code key} changed or was removed.
+         */
+        void onColorChanged(ColorStore store, String key);
+    }
+
+    /**
+     * @return true if a color has been stored for the given key
+     */
+    boolean contains(String key);
+
+    /**
+     * @return the color stored for the given key, or {@code defValue} if there isn't one
+     */
+    @ColorInt
+    int getColor(String key, @ColorInt int defValue);
+
+    void putColor(String key, @ColorInt int color);
+
+    /**
+     * Stores {@code color} for the given key, unless a color is already stored for it. Used to
+     * store a preference's default value. Stores that are still loading shouldn't wait to find out;
+     * they may store the color once they've loaded, if it's still absent.
+     */
+    void putColorIfAbsent(String key, @ColorInt int color);
+
+    /**
+     * Stores several colors at once, persisting them together.
+     *
+     * @param colors colors keyed by the key they're stored under
+     */
+    void putColors(Map<String, Integer> colors);
+
+    /**
+     * Starts notifying {@code listener} of changes. Like
+     * {@link android.content.SharedPreferences#registerOnSharedPreferenceChangeListener}, stores
+     * should only hold listeners weakly, so callers must keep a reference to them.
+     */
+    void registerOnColorChangedListener(OnColorChangedListener listener);
+
+    void unregisterOnColorChangedListener(OnColorChangedListener listener);
+}
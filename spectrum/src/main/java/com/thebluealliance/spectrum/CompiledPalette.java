@@ -0,0 +1,269 @@
+package com.thebluealliance.spectrum;
+
+import com.thebluealliance.spectrum.internal.ColorIndex;
+import com.thebluealliance.spectrum.internal.ColorKdTree;
+import com.thebluealliance.spectrum.internal.ColorUtil;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.ArrayRes;
+import android.support.annotation.ColorInt;
+
+import java.util.Arrays;
+
+/**
+ * An immutable palette of colors along with the data derived from them: which colors are dark,
+ * their touch feedback colors, and where each color is in the palette. Compiling a palette does
+ * this work once, so a palette that's compiled at startup can be passed to any number of
+ * {@link SpectrumPalette}s, {@link SpectrumDialog}s, {@link SpectrumPreference}s and
+ * {@link SpectrumPreferenceCompat}s without any of them repeating it.
+ * <p/>
+ * Only the colors are written to a {@link Parcel}; the derived data is recomputed when a palette
+ * is read back.
+ */
+public final class CompiledPalette implements Parcelable {
+
+    /**
+     * This palette's colors, followed by spare room for appending. Palettes appended to this one
+     * share the array and fill in the room; only the first {@link #mSize} colors are this
+     * palette's. The same goes for the other arrays.
+     */
+    private final @ColorInt int[] mColors;
+    private final int mSize;
+    private final long[] mDarkColors;
+    private final @ColorInt int[] mRippleColors;
+    private final ColorIndex mIndex;
+    /**
+     * How far the shared arrays have been filled, guarded by itself. Only the palette that filled
+     * them that far may append to them in place; appending to any other copies them.
+     */
+    private final int[] mFilled;
+    /**
+     * Built the first time {@link #nearestIndex(int)} is called
+     */
+    private volatile ColorKdTree mNearestColorTree;
+
+    private CompiledPalette(@ColorInt int[] colors) {
+        mColors = colors;
+        mSize = colors.length;
+        mFilled = new int[] {mSize};
+
+        mDarkColors = new long[(colors.length + 63) / 64];
+        compileDarkColors(colors, 0, mSize, mDarkColors);
+
+        mRippleColors = new int[colors.length];
+        ColorUtil.getRippleColors(colors, mRippleColors);
+
+        mIndex = new ColorIndex(colors);
+    }
+
+    private CompiledPalette(@ColorInt int[] colors, int size, long[] darkColors, @ColorInt int[] rippleColors,
+                            ColorIndex index, int[] filled) {
+        mColors = colors;
+        mSize = size;
+        mDarkColors = darkColors;
+        mRippleColors = rippleColors;
+        mIndex = index;
+        mFilled = filled;
+    }
+
+    private static void compileDarkColors(@ColorInt int[] colors, int from, int to, long[] outDarkColors) {
+        for (int i = from; i < to; i++) {
+            if (ColorUtil.isColorDark(colors[i])) {
+                outDarkColors[i >> 6] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * Compiles a palette from the given colors. The array is copied, so it may be modified
+     * afterwards without affecting the palette.
+     *
+     * @param colors an array of ARGB colors
+     */
+    public static CompiledPalette compile(@ColorInt int[] colors) {
+        if (colors == null) {
+            throw new IllegalArgumentException("colors must not be null");
+        }
+        return new CompiledPalette(colors.clone());
+    }
+
+    /**
+     * Compiles a palette from an array resource. The referenced array resource should be composed
+     * of colors or references to colors.
+     */
+    public static CompiledPalette compile(Context context, @ArrayRes int colorsArrayRes) {
+        return new CompiledPalette(context.getResources().getIntArray(colorsArrayRes));
+    }
+
+    /**
+     * Returns a new palette made of this palette's colors followed by {@code colors}. This palette
+     * is unchanged. Only the added colors are compiled, and the new palette shares its storage
+     * with this one, which grows geometrically, so appending pages of colors one after another
+     * takes time proportional to the size of each page rather than the size of the palette.
+     *
+     * @param colors an array of ARGB colors
+     */
+    public CompiledPalette append(@ColorInt int[] colors) {
+        if (colors == null) {
+            throw new IllegalArgumentException("colors must not be null");
+        }
+        int newSize = mSize + colors.length;
+        synchronized (mFilled) {
+            if (mFilled[0] == mSize && newSize <= mColors.length) {
+                mFilled[0] = newSize;
+                return appendInto(mColors, mDarkColors, mRippleColors, mFilled, colors, newSize);
+            }
+        }
+        // Out of room, or another palette was already appended to this one
+        int capacity = Math.max(newSize, mSize * 2);
+        long[] darkColors = Arrays.copyOf(mDarkColors, (capacity + 63) / 64);
+        // Palettes appended to this one may have set bits past its colors
+        if ((mSize & 63) != 0) {
+            darkColors[mSize >> 6] &= (1L << mSize) - 1;
+        }
+        Arrays.fill(darkColors, (mSize + 63) >> 6, darkColors.length, 0L);
+        return appendInto(Arrays.copyOf(mColors, capacity), darkColors, Arrays.copyOf(mRippleColors, capacity),
+                new int[] {newSize}, colors, newSize);
+    }
+
+    private CompiledPalette appendInto(@ColorInt int[] allColors, long[] darkColors, @ColorInt int[] rippleColors,
+                                       int[] filled, @ColorInt int[] colors, int newSize) {
+        System.arraycopy(colors, 0, allColors, mSize, colors.length);
+        compileDarkColors(allColors, mSize, newSize, darkColors);
+        for (int i = mSize; i < newSize; i++) {
+            rippleColors[i] = ColorUtil.getRippleColor(allColors[i]);
+        }
+        return new CompiledPalette(allColors, newSize, darkColors, rippleColors,
+                mIndex.append(allColors, newSize), filled);
+    }
+
+    /**
+     * @return the number of colors in this palette, including duplicates
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public @ColorInt int getColor(int index) {
+        checkIndex(index);
+        return mColors[index];
+    }
+
+    /**
+     * @return a copy of this palette's colors
+     */
+    public @ColorInt int[] getColors() {
+        return Arrays.copyOf(mColors, mSize);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+    }
+
+    /**
+     * @return true if the color at the given position is dark, and so is shown with a white
+     * checkmark and outline
+     * @see ColorUtil#isColorDark(int)
+     */
+    public boolean isDark(int index) {
+        checkIndex(index);
+        return (mDarkColors[index >> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return the touch feedback color for the color at the given position
+     */
+    public @ColorInt int getRippleColor(int index) {
+        checkIndex(index);
+        return mRippleColors[index];
+    }
+
+    /**
+     * @return the first position of the given color, or -1 if it isn't in this palette
+     */
+    public int indexOf(@ColorInt int color) {
+        return mIndex.indexOf(color);
+    }
+
+    /**
+     * @return the next position after {@code index} that holds the same color, or -1 if there
+     * isn't one
+     */
+    public int nextIndexOf(int index) {
+        return mIndex.nextIndexOf(index);
+    }
+
+    public boolean contains(@ColorInt int color) {
+        return mIndex.contains(color);
+    }
+
+    /**
+     * Finds the color in this palette that looks the most like the given color, which doesn't
+     * have to be in the palette. Colors are compared by their distance in CIELAB space, ignoring
+     * alpha. The first call builds a spatial index of the palette, after which lookups take
+     * logarithmic time on average.
+     *
+     * @return the first position of the closest color, or -1 if this palette is empty
+     */
+    public int nearestIndex(@ColorInt int color) {
+        int index = mIndex.indexOf(color);
+        if (index != -1) {
+            return index;
+        }
+        ColorKdTree tree = mNearestColorTree;
+        if (tree == null) {
+            synchronized (this) {
+                tree = mNearestColorTree;
+                if (tree == null) {
+                    tree = new ColorKdTree(mColors, mIndex);
+                    mNearestColorTree = tree;
+                }
+            }
+        }
+        return tree.nearestIndex(color);
+    }
+
+    /**
+     * @return the number of distinct colors in this palette
+     */
+    public int getUniqueCount() {
+        return mIndex.getUniqueCount();
+    }
+
+    /**
+     * @return true if the color at the given position also appears at an earlier position
+     */
+    public boolean isDuplicate(int index) {
+        return mIndex.indexOf(getColor(index)) != index;
+    }
+
+    ColorIndex getIndex() {
+        return mIndex;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeIntArray(getColors());
+    }
+
+    public static final Creator<CompiledPalette> CREATOR = new Creator<CompiledPalette>() {
+        @Override
+        public CompiledPalette createFromParcel(Parcel source) {
+            return new CompiledPalette(source.createIntArray());
+        }
+
+        @Override
+        public CompiledPalette[] newArray(int size) {
+            return new CompiledPalette[size];
+        }
+    };
+}
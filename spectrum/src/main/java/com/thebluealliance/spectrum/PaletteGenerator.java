@@ -0,0 +1,353 @@
+package com.thebluealliance.spectrum;
+
+import com.thebluealliance.spectrum.internal.ColorQuantizer;
+
+import android.graphics.Bitmap;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracts a palette of representative colors from an image, to show in a {@link SpectrumPalette}
+ * or a {@link SpectrumDialog}. Colors are picked with the median cut algorithm; the pixels are
+ * counted in parallel on every core, and large images are downsampled first.
+ * <p/>
+ * Typical usage:
+ * <pre>
+ * mTask = new PaletteGenerator.Builder(bitmap)
+ *         .setMaxColors(12)
+ *         .generateAsync(new PaletteGenerator.OnPaletteGeneratedListener() {
+ *             public void onPaletteGenerated(CompiledPalette palette) {
+ *                 spectrumPalette.setColors(palette);
+ *             }
+ *
+ *             public void onPaletteGenerationFailed(Throwable error) {
+ *                 Log.w(TAG, "Couldn't generate a palette", error);
+ *             }
+ *         });
+ * </pre>
+ * and {@code mTask.cancel()} if the result is no longer needed.
+ */
+public final class PaletteGenerator {
+
+    public static final int DEFAULT_MAX_COLORS = 16;
+
+    /**
+     * Images with more pixels than this are downsampled by default; plenty to find the dominant
+     * colors of a photo
+     */
+    public static final int DEFAULT_MAX_PIXELS = 160 * 160;
+
+    /**
+     * Fewer pixels than this aren't worth handing to another thread
+     */
+    private static final int MIN_PIXELS_PER_CHUNK = 16 * 1024;
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private static ThreadPoolExecutor sHistogramExecutor;
+
+    private final Bitmap mBitmap;
+    private final int[] mPixels;
+    private final int mMaxColors;
+    private final int mMaxPixels;
+
+    private PaletteGenerator(Builder builder) {
+        mBitmap = builder.mBitmap;
+        mPixels = builder.mPixels;
+        mMaxColors = builder.mMaxColors;
+        mMaxPixels = builder.mMaxPixels;
+    }
+
+    public interface OnPaletteGeneratedListener {
+        /**
+         * Called on the main thread with the generated palette, unless the generation was
+         * cancelled.
+         */
+        void onPaletteGenerated(@NonNull CompiledPalette palette);
+
+        /**
+         * Called on the main thread instead of {@link #onPaletteGenerated(CompiledPalette)} if
+         * reading the image or generating the palette failed, such as with an
+         * {@link OutOfMemoryError}, unless the generation was cancelled.
+         */
+        void onPaletteGenerationFailed(@NonNull Throwable error);
+    }
+
+    /**
+     * @return the generated colors, most common first
+     */
+    private int[] quantize() throws InterruptedException {
+        int[] pixels;
+        int step = 1;
+        if (mBitmap != null) {
+            Bitmap bitmap = mBitmap;
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            if ((long) width * height > mMaxPixels) {
+                float scale = (float) Math.sqrt((double) mMaxPixels / ((long) width * height));
+                width = Math.max(1, (int) (width * scale));
+                height = Math.max(1, (int) (height * scale));
+                bitmap = Bitmap.createScaledBitmap(mBitmap, width, height, false);
+            }
+            pixels = new int[width * height];
+            bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+            if (bitmap != mBitmap) {
+                bitmap.recycle();
+            }
+        } else {
+            pixels = mPixels;
+            // Raw buffers are sampled at regular intervals instead of being scaled
+            step = (int) (((long) pixels.length + mMaxPixels - 1) / mMaxPixels);
+        }
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        int[] histogram = histogram(pixels, Math.max(step, 1));
+        return ColorQuantizer.medianCut(histogram, mMaxColors);
+    }
+
+    /**
+     * Counts the pixels in chunks, one per core, with the calling thread taking the first chunk,
+     * and adds the chunks' histograms up.
+     */
+    private static int[] histogram(final int[] pixels, final int step) throws InterruptedException {
+        int sampleCount = (pixels.length + step - 1) / step;
+        int chunkCount = Math.max(1, Math.min(CPU_COUNT, sampleCount / MIN_PIXELS_PER_CHUNK));
+        // Whole samples per chunk, so that every chunk starts on a sample
+        int chunkLength = (sampleCount + chunkCount - 1) / chunkCount * step;
+
+        ArrayList<Future<int[]>> chunks = new ArrayList<>(chunkCount - 1);
+        try {
+            for (int chunk = 1; chunk < chunkCount; chunk++) {
+                final int from = chunk * chunkLength;
+                final int to = Math.min(pixels.length, from + chunkLength);
+                chunks.add(getHistogramExecutor().submit(new Callable<int[]>() {
+                    @Override
+                    public int[] call() throws Exception {
+                        int[] histogram = new int[ColorQuantizer.HISTOGRAM_SIZE];
+                        if (!ColorQuantizer.addToHistogram(pixels, from, to, step, histogram)) {
+                            throw new InterruptedException();
+                        }
+                        return histogram;
+                    }
+                }));
+            }
+
+            int[] histogram = new int[ColorQuantizer.HISTOGRAM_SIZE];
+            if (!ColorQuantizer.addToHistogram(pixels, 0, Math.min(pixels.length, chunkLength), step, histogram)) {
+                throw new InterruptedException();
+            }
+            for (Future<int[]> chunk : chunks) {
+                int[] partial = chunk.get();
+                for (int bin = 0; bin < ColorQuantizer.HISTOGRAM_SIZE; bin++) {
+                    histogram[bin] += partial[bin];
+                }
+            }
+            return histogram;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            // Stops the other chunks early if this one failed or was interrupted
+            for (Future<int[]> chunk : chunks) {
+                chunk.cancel(true);
+            }
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getHistogramExecutor() {
+        if (sHistogramExecutor == null) {
+            sHistogramExecutor = new ThreadPoolExecutor(CPU_COUNT, CPU_COUNT, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "PaletteGenerator #" + mCount.getAndIncrement());
+                }
+            });
+            sHistogramExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sHistogramExecutor;
+    }
+
+    /**
+     * A palette generation started with {@link Builder#generateAsync(OnPaletteGeneratedListener)}
+     */
+    public static final class Task {
+        private final FutureTask<CompiledPalette> mFuture;
+        private volatile boolean mCancelled = false;
+
+        private Task(final PaletteGenerator generator, final OnPaletteGeneratedListener listener) {
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            mFuture = new FutureTask<CompiledPalette>(new Callable<CompiledPalette>() {
+                @Override
+                public CompiledPalette call() throws Exception {
+                    return CompiledPalette.compile(generator.quantize());
+                }
+            }) {
+                @Override
+                protected void done() {
+                    if (isCancelled()) {
+                        return;
+                    }
+                    CompiledPalette palette = null;
+                    Throwable error = null;
+                    try {
+                        palette = get();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof InterruptedException) {
+                            return;
+                        }
+                        // Never thrown from here, where it would crash the process; the listener
+                        // decides what to do with it
+                        error = e.getCause();
+                    }
+                    final CompiledPalette result = palette;
+                    final Throwable failure = error;
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Checked here too, so that cancelling on the main thread always
+                            // prevents the callback
+                            if (mCancelled) {
+                                return;
+                            }
+                            if (failure != null) {
+                                listener.onPaletteGenerationFailed(failure);
+                            } else {
+                                listener.onPaletteGenerated(result);
+                            }
+                        }
+                    });
+                }
+            };
+        }
+
+        /**
+         * Stops the generation as soon as possible. If called from the main thread, the listener
+         * is guaranteed not to be called afterwards.
+         */
+        public void cancel() {
+            mCancelled = true;
+            mFuture.cancel(true);
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * @return true once the palette has been generated, or generation failed or was cancelled
+         */
+        public boolean isDone() {
+            return mFuture.isDone();
+        }
+    }
+
+    public static class Builder {
+        private final Bitmap mBitmap;
+        private final int[] mPixels;
+        private int mMaxColors = DEFAULT_MAX_COLORS;
+        private int mMaxPixels = DEFAULT_MAX_PIXELS;
+
+        /**
+         * @param bitmap the image to extract colors from. It must not be recycled until
+         *               generation is done.
+         */
+        public Builder(@NonNull Bitmap bitmap) {
+            mBitmap = bitmap;
+            mPixels = null;
+        }
+
+        /**
+         * @param pixels the ARGB pixels of the image to extract colors from, in any order. The
+         *               array is read in place, so it must not be modified until generation is
+         *               done.
+         */
+        public Builder(@NonNull @ColorInt int[] pixels) {
+            mBitmap = null;
+            mPixels = pixels;
+        }
+
+        /**
+         * Sets the maximum number of colors to generate. Fewer are generated if the image doesn't
+         * have that many distinct colors. Defaults to {@link #DEFAULT_MAX_COLORS}.
+         */
+        public Builder setMaxColors(int maxColors) {
+            if (maxColors < 1) {
+                throw new IllegalArgumentException("maxColors must be at least 1");
+            }
+            mMaxColors = maxColors;
+            return this;
+        }
+
+        /**
+         * Sets the number of pixels above which the image is downsampled before its colors are
+         * counted. Bitmaps are scaled down; pixel buffers are sampled at regular intervals.
+         * Defaults to {@link #DEFAULT_MAX_PIXELS}; use {@link Integer#MAX_VALUE} to count every
+         * pixel.
+         */
+        public Builder setMaxPixels(int maxPixels) {
+            if (maxPixels < 1) {
+                throw new IllegalArgumentException("maxPixels must be at least 1");
+            }
+            mMaxPixels = maxPixels;
+            return this;
+        }
+
+        /**
+         * Generates the palette on the calling thread, with help from background threads. Must not
+         * be called from the main thread.
+         *
+         * @return the colors of the image, most common first, or null if the calling thread was
+         * interrupted
+         */
+        @Nullable
+        public CompiledPalette generate() {
+            try {
+                int[] colors = new PaletteGenerator(this).quantize();
+                return CompiledPalette.compile(colors);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        /**
+         * Generates the palette in the background and delivers it to {@code listener} on the main
+         * thread. Colors are ordered most common first.
+         *
+         * @return a task that can be used to cancel the generation
+         */
+        public Task generateAsync(@NonNull OnPaletteGeneratedListener listener) {
+            Task task = new Task(new PaletteGenerator(this), listener);
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(task.mFuture);
+            return task;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.thebluealliance.spectrum;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.support.annotation.ArrayRes;
+import android.support.annotation.NonNull;
+import android.util.SparseArray;
+
+import java.util.HashMap;
+
+/**
+ * Process-wide registry of {@link CompiledPalette}s. Palettes are registered once under a string
+ * key, and dialogs store only that key in their arguments instead of every color, which keeps
+ * large palettes out of the {@link android.os.Bundle}s that are parceled on every fragment
+ * transaction and state save.
+ * <p/>
+ * A dialog that's restored after its process was killed looks its key up again, so palettes
+ * registered from code should be registered somewhere that runs on every process start, such as
+ * {@link android.app.Application#onCreate()}. Registering a {@link PaletteProvider} instead of a
+ * palette defers building the palette until it's first looked up. Palettes loaded from array
+ * resources don't need to be registered at all; they're identified by their resource ID and
+ * loaded the first time they're looked up.
+ * <p/>
+ * This class is thread-safe.
+ */
+public final class PaletteRegistry {
+
+    /**
+     * Builds a palette the first time its key is looked up
+     */
+    public interface PaletteProvider {
+
+        /**
+         * @param context the application context
+         * @return the palette to register under the provider's key; must not be null
+         */
+        @NonNull
+        CompiledPalette createPalette(Context context);
+    }
+
+    private static final HashMap<String, CompiledPalette> sPalettes = new HashMap<>();
+    private static final HashMap<String, PaletteProvider> sProviders = new HashMap<>();
+    private static final SparseArray<ResourcePalette> sResourcePalettes = new SparseArray<>();
+
+    /**
+     * A palette loaded from an array resource, and the configuration it was loaded in
+     */
+    private static final class ResourcePalette {
+        final Configuration mConfiguration;
+        final CompiledPalette mPalette;
+
+        ResourcePalette(Configuration configuration, CompiledPalette palette) {
+            mConfiguration = configuration;
+            mPalette = palette;
+        }
+    }
+
+    private PaletteRegistry() {
+        // Util class
+    }
+
+    /**
+     * Registers a palette under the given key, replacing any palette or provider that was already
+     * registered under it.
+     */
+    public static synchronized void register(@NonNull String key, @NonNull CompiledPalette palette) {
+        sProviders.remove(key);
+        sPalettes.put(key, palette);
+    }
+
+    /**
+     * Registers a provider that will build the palette for the given key the first time it's
+     * looked up, replacing any palette or provider that was already registered under it.
+     */
+    public static synchronized void register(@NonNull String key, @NonNull PaletteProvider provider) {
+        sPalettes.remove(key);
+        sProviders.put(key, provider);
+    }
+
+    /**
+     * Removes the palette or provider registered under the given key, if any.
+     */
+    public static synchronized void unregister(@NonNull String key) {
+        sPalettes.remove(key);
+        sProviders.remove(key);
+    }
+
+    /**
+     * @return true if a palette or provider is registered under the given key
+     */
+    public static synchronized boolean isRegistered(@NonNull String key) {
+        return sPalettes.containsKey(key) || sProviders.containsKey(key);
+    }
+
+    /**
+     * Looks up the palette registered under the given key, building it first if it was registered
+     * with a {@link PaletteProvider}.
+     *
+     * @throws IllegalArgumentException if nothing is registered under the key
+     */
+    @NonNull
+    public static synchronized CompiledPalette get(Context context, @NonNull String key) {
+        CompiledPalette palette = sPalettes.get(key);
+        if (palette == null) {
+            PaletteProvider provider = sProviders.remove(key);
+            if (provider == null) {
+                throw new IllegalArgumentException("No palette is registered with key \"" + key + "\"");
+            }
+            palette = provider.createPalette(context.getApplicationContext());
+            sPalettes.put(key, palette);
+        }
+        return palette;
+    }
+
+    /**
+     * Looks up the palette for an array resource, loading and compiling it the first time. The
+     * referenced array resource should be composed of colors or references to colors. Palettes are
+     * cached by resource ID along with the configuration of {@code context}'s resources, and loaded
+     * again when that configuration changes, so arrays defined under qualifiers such as
+     * {@code -night}, {@code -land} or a locale are always up to date.
+     */
+    @NonNull
+    public static synchronized CompiledPalette getResourcePalette(Context context, @ArrayRes int colorsArrayRes) {
+        Configuration configuration = context.getResources().getConfiguration();
+        ResourcePalette cached = sResourcePalettes.get(colorsArrayRes);
+        if (cached != null && cached.mConfiguration.equals(configuration)) {
+            return cached.mPalette;
+        }
+        CompiledPalette palette = CompiledPalette.compile(context, colorsArrayRes);
+        // Copied, since the resources update their configuration in place
+        sResourcePalettes.put(colorsArrayRes, new ResourcePalette(new Configuration(configuration), palette));
+        return palette;
+    }
+}
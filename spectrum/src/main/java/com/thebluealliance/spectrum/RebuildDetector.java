@@ -0,0 +1,295 @@
+package com.thebluealliance.spectrum;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
+/**
+ * Debug mode that records every time a {@link SpectrumPalette} rebuilds its views, along with why
+ * and from where, and flags rebuilds that are likely wasted:
+ * <ul>
+ * <li>{@link #FLAG_DURING_MEASURE}: the rebuild happened inside a measure pass</li>
+ * <li>{@link #FLAG_REPEATED_IN_FRAME}: the palette had already rebuilt in the same frame</li>
+ * <li>{@link #FLAG_UNCHANGED_INPUTS}: the colors, column count and mode were the same as for the
+ * palette's previous rebuild</li>
+ * </ul>
+ * Like {@link android.os.StrictMode}, this is meant for debug builds; it captures a stack trace
+ * for every rebuild. While it's disabled, palettes only check a static flag.
+ * <pre>
+ * if (BuildConfig.DEBUG) {
+ *     RebuildDetector.enable(null); // Logs flagged rebuilds
+ * }
+ * </pre>
+ * Must only be used from the main thread.
+ */
+public final class RebuildDetector {
+
+    private static final String TAG = "SpectrumRebuild";
+
+    public static final int FLAG_DURING_MEASURE = 1;
+    public static final int FLAG_REPEATED_IN_FRAME = 1 << 1;
+    public static final int FLAG_UNCHANGED_INPUTS = 1 << 2;
+
+    private static final String[] REASON_NAMES = {
+            "initial", "colors changed", "columns changed", "mode changed", "reattached"};
+
+    public interface Listener {
+        /**
+         * Called for every rebuild, flagged or not, right before the palette rebuilds its views.
+         */
+        void onRebuild(Rebuild rebuild);
+    }
+
+    /**
+     * A single rebuild of a palette's views
+     */
+    public static final class Rebuild {
+        private final int mReason;
+        private final int mFlags;
+        private final int mColorCount;
+        private final int mColumnCount;
+        private final int mMode;
+        private final Throwable mCallSite;
+
+        private Rebuild(int reason, int flags, int colorCount, int columnCount, int mode, Throwable callSite) {
+            mReason = reason;
+            mFlags = flags;
+            mColorCount = colorCount;
+            mColumnCount = columnCount;
+            mMode = mode;
+            mCallSite = callSite;
+        }
+
+        /**
+         * @return one of the {@code SpectrumMetrics.REBUILD_} constants
+         */
+        public int getReason() {
+            return mReason;
+        }
+
+        /**
+         * @return a combination of the {@code FLAG_} constants, or 0 if nothing was suspicious
+         */
+        public int getFlags() {
+            return mFlags;
+        }
+
+        public int getColorCount() {
+            return mColorCount;
+        }
+
+        public int getColumnCount() {
+            return mColumnCount;
+        }
+
+        /**
+         * @return the palette's mode; see {@link SpectrumPalette#setPaletteMode(int)}
+         */
+        public int getMode() {
+            return mMode;
+        }
+
+        /**
+         * @return a throwable whose stack trace shows what triggered the rebuild
+         */
+        public Throwable getCallSite() {
+            return mCallSite;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("Palette rebuilt (")
+                    .append(REASON_NAMES[mReason]).append(") with ")
+                    .append(mColorCount).append(" colors in ")
+                    .append(mColumnCount).append(" columns");
+            if ((mFlags & FLAG_DURING_MEASURE) != 0) {
+                builder.append("; during measure");
+            }
+            if ((mFlags & FLAG_REPEATED_IN_FRAME) != 0) {
+                builder.append("; repeated in the same frame");
+            }
+            if ((mFlags & FLAG_UNCHANGED_INPUTS) != 0) {
+                builder.append("; inputs unchanged");
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * What a palette looked like when it last rebuilt
+     */
+    private static final class PaletteState {
+        CompiledPalette mPalette;
+        int mColumnCount;
+        int mMode;
+        long mFrame;
+    }
+
+    private static boolean sEnabled = false;
+    private static Listener sListener;
+    private static final WeakHashMap<SpectrumPalette, PaletteState> sStates = new WeakHashMap<>();
+
+    /**
+     * Counts up once per turn of the main looper in which a rebuild happened. Measure and layout
+     * passes run in a single turn, so two rebuilds with the same count are in the same frame.
+     */
+    private static long sFrame = 0;
+    private static boolean sFrameEndPosted = false;
+    private static Handler sHandler;
+    private static final Runnable sFrameEndRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sFrame++;
+            sFrameEndPosted = false;
+        }
+    };
+
+    private static int sRebuildCount = 0;
+    private static final int[] sReasonCounts = new int[REASON_NAMES.length];
+    private static int sDuringMeasureCount = 0;
+    private static int sRepeatedInFrameCount = 0;
+    private static int sUnchangedInputsCount = 0;
+
+    private RebuildDetector() {
+        // Util class
+    }
+
+    /**
+     * Starts recording rebuilds.
+     *
+     * @param listener receives every rebuild, or null to log flagged rebuilds, with their call
+     *                 sites, instead
+     */
+    public static void enable(Listener listener) {
+        sEnabled = true;
+        sListener = listener;
+    }
+
+    /**
+     * Stops recording rebuilds. The counts reported by {@link #getSummary()} are kept.
+     */
+    public static void disable() {
+        sEnabled = false;
+        sListener = null;
+        sStates.clear();
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * @return how many rebuilds were recorded, by reason and by flag
+     */
+    public static String getSummary() {
+        StringBuilder summary = new StringBuilder()
+                .append(sRebuildCount).append(" palette rebuilds (");
+        for (int i = 0; i < REASON_NAMES.length; i++) {
+            if (i > 0) {
+                summary.append(", ");
+            }
+            summary.append(sReasonCounts[i]).append(' ').append(REASON_NAMES[i]);
+        }
+        return summary.append("); ")
+                .append(sDuringMeasureCount).append(" during measure, ")
+                .append(sRepeatedInFrameCount).append(" repeated in the same frame, ")
+                .append(sUnchangedInputsCount).append(" with unchanged inputs")
+                .toString();
+    }
+
+    /**
+     * Logs {@link #getSummary()}.
+     */
+    public static void logSummary() {
+        Log.i(TAG, getSummary());
+    }
+
+    /**
+     * Clears the counts reported by {@link #getSummary()}.
+     */
+    public static void reset() {
+        sRebuildCount = 0;
+        Arrays.fill(sReasonCounts, 0);
+        sDuringMeasureCount = 0;
+        sRepeatedInFrameCount = 0;
+        sUnchangedInputsCount = 0;
+    }
+
+    /**
+     * Called by palettes right before they rebuild their views, while enabled.
+     */
+    static void onRebuild(SpectrumPalette palette, int reason, boolean duringMeasure, CompiledPalette colors,
+                          int columnCount, int mode) {
+        Throwable callSite = new Throwable("Palette rebuild");
+
+        if (!sFrameEndPosted) {
+            if (sHandler == null) {
+                sHandler = new Handler(Looper.getMainLooper());
+            }
+            sFrameEndPosted = true;
+            sHandler.post(sFrameEndRunnable);
+        }
+
+        int flags = 0;
+        if (duringMeasure) {
+            flags |= FLAG_DURING_MEASURE;
+        }
+        PaletteState state = sStates.get(palette);
+        if (state == null) {
+            state = new PaletteState();
+            sStates.put(palette, state);
+        } else {
+            if (state.mFrame == sFrame) {
+                flags |= FLAG_REPEATED_IN_FRAME;
+            }
+            // Palettes release their views when detached, so rebuilding on reattach is expected
+            if (reason != SpectrumMetrics.REBUILD_REATTACHED && sameColors(state.mPalette, colors)
+                    && state.mColumnCount == columnCount && state.mMode == mode) {
+                flags |= FLAG_UNCHANGED_INPUTS;
+            }
+        }
+        state.mPalette = colors;
+        state.mColumnCount = columnCount;
+        state.mMode = mode;
+        state.mFrame = sFrame;
+
+        sRebuildCount++;
+        sReasonCounts[reason]++;
+        if ((flags & FLAG_DURING_MEASURE) != 0) {
+            sDuringMeasureCount++;
+        }
+        if ((flags & FLAG_REPEATED_IN_FRAME) != 0) {
+            sRepeatedInFrameCount++;
+        }
+        if ((flags & FLAG_UNCHANGED_INPUTS) != 0) {
+            sUnchangedInputsCount++;
+        }
+
+        Rebuild rebuild = new Rebuild(reason, flags, colors != null ? colors.size() : 0, columnCount, mode, callSite);
+        if (sListener != null) {
+            sListener.onRebuild(rebuild);
+        } else if ((flags & (FLAG_REPEATED_IN_FRAME | FLAG_UNCHANGED_INPUTS)) != 0) {
+            // Rebuilds during measure are how palettes normally lay out, so alone they aren't
+            // worth a warning
+            Log.w(TAG, rebuild.toString(), callSite);
+        }
+    }
+
+    private static boolean sameColors(CompiledPalette a, CompiledPalette b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.getColor(i) != b.getColor(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,270 @@
+package com.thebluealliance.spectrum;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.support.annotation.ColorInt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A {@link ColorStore} backed by a {@link SharedPreferences} file. Every int value in the file is
+ * loaded into memory by a single read on a background thread as soon as the store is created, and
+ * served from memory afterwards; writes update memory immediately and are persisted with
+ * {@link SharedPreferences.Editor#apply()}. Changes written to the file directly, rather than
+ * through the store, are picked up too, and reported to the store's listeners.
+ * <p/>
+ * The main thread never waits for the initial load. Until it finishes, reads there only see colors
+ * written through the store, and return the default otherwise; once it finishes, listeners are
+ * notified of every loaded color, so preferences that showed a default update themselves. Reads
+ * on other threads wait for the load. A store should still be created early, such as in
+ * {@link android.app.Application#onCreate()}, so that preferences rarely show a default at all.
+ */
+public class SharedPreferencesColorStore implements ColorStore {
+
+    private final SharedPreferences mPreferences;
+    private final HashMap<String, Integer> mColors = new HashMap<>();
+    private final CountDownLatch mLoaded = new CountDownLatch(1);
+    /**
+     * Keys written or changed before the initial load finished, whose loaded values are stale;
+     * guarded by {@link #mColors}
+     */
+    private final HashSet<String> mChangedWhileLoading = new HashSet<>();
+    /**
+     * Colors passed to {@link #putColorIfAbsent(String, int)} before the initial load finished,
+     * written once it's known whether the file holds them; guarded by {@link #mColors}
+     */
+    private final HashMap<String, Integer> mPendingDefaults = new HashMap<>();
+    private final WeakHashMap<OnColorChangedListener, Boolean> mListeners = new WeakHashMap<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Kept in a field since {@link SharedPreferences} only holds its listeners weakly
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPreferenceListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    onPreferenceChanged(key);
+                }
+            };
+
+    /**
+     * Creates a store backed by the default {@link SharedPreferences} of the given context.
+     */
+    public SharedPreferencesColorStore(Context context) {
+        this(PreferenceManager.getDefaultSharedPreferences(context));
+    }
+
+    public SharedPreferencesColorStore(SharedPreferences preferences) {
+        mPreferences = preferences;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    /**
+     * Called on a background thread. Registering for changes may also wait for the file to be
+     * read, so it's done here too, before the read so that no change is missed.
+     */
+    private void load() {
+        mPreferences.registerOnSharedPreferenceChangeListener(mPreferenceListener);
+        Map<String, ?> values = mPreferences.getAll();
+        final ArrayList<String> loadedKeys = new ArrayList<>();
+        SharedPreferences.Editor defaults = null;
+        synchronized (mColors) {
+            for (Map.Entry<String, ?> value : values.entrySet()) {
+                // Colors written while loading are newer than what was read
+                if (value.getValue() instanceof Integer && !mChangedWhileLoading.contains(value.getKey())) {
+                    mColors.put(value.getKey(), (Integer) value.getValue());
+                    loadedKeys.add(value.getKey());
+                }
+            }
+            for (Map.Entry<String, Integer> color : mPendingDefaults.entrySet()) {
+                if (!mColors.containsKey(color.getKey())) {
+                    if (defaults == null) {
+                        defaults = mPreferences.edit();
+                    }
+                    mColors.put(color.getKey(), color.getValue());
+                    defaults.putInt(color.getKey(), color.getValue());
+                }
+            }
+            mChangedWhileLoading.clear();
+            mPendingDefaults.clear();
+            mLoaded.countDown();
+        }
+        if (defaults != null) {
+            // Reported to listeners through the change listener
+            defaults.apply();
+        }
+        if (!loadedKeys.isEmpty()) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (String key : loadedKeys) {
+                        notifyListeners(key);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return true once the initial load has finished
+     */
+    public boolean isLoaded() {
+        return mLoaded.getCount() == 0;
+    }
+
+    private void awaitLoaded() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mLoaded.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the initial load, unless called on the main thread.
+     */
+    private void awaitLoadedOffMainThread() {
+        if (!isLoaded() && Looper.myLooper() != Looper.getMainLooper()) {
+            awaitLoaded();
+        }
+    }
+
+    /**
+     * Before the initial load finishes, returns false on the main thread for colors that weren't
+     * written through the store; see {@link #isLoaded()}.
+     */
+    @Override
+    public boolean contains(String key) {
+        awaitLoadedOffMainThread();
+        synchronized (mColors) {
+            return mColors.containsKey(key);
+        }
+    }
+
+    /**
+     * Before the initial load finishes, returns {@code defValue} on the main thread for colors that
+     * weren't written through the store; see {@link #isLoaded()}.
+     */
+    @Override
+    public @ColorInt int getColor(String key, @ColorInt int defValue) {
+        awaitLoadedOffMainThread();
+        synchronized (mColors) {
+            Integer color = mColors.get(key);
+            return color != null ? color : defValue;
+        }
+    }
+
+    @Override
+    public void putColor(String key, @ColorInt int color) {
+        synchronized (mColors) {
+            mColors.put(key, color);
+            markChangedWhileLoading(key);
+        }
+        mPreferences.edit().putInt(key, color).apply();
+    }
+
+    @Override
+    public void putColorIfAbsent(String key, @ColorInt int color) {
+        synchronized (mColors) {
+            if (mColors.containsKey(key)) {
+                return;
+            }
+            if (!isLoaded()) {
+                mPendingDefaults.put(key, color);
+                return;
+            }
+            mColors.put(key, color);
+        }
+        mPreferences.edit().putInt(key, color).apply();
+    }
+
+    @Override
+    public void putColors(Map<String, Integer> colors) {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        synchronized (mColors) {
+            for (Map.Entry<String, Integer> color : colors.entrySet()) {
+                mColors.put(color.getKey(), color.getValue());
+                markChangedWhileLoading(color.getKey());
+                editor.putInt(color.getKey(), color.getValue());
+            }
+        }
+        editor.apply();
+    }
+
+    /**
+     * Must be called while holding {@link #mColors}.
+     */
+    private void markChangedWhileLoading(String key) {
+        if (!isLoaded()) {
+            mChangedWhileLoading.add(key);
+        }
+    }
+
+    @Override
+    public void registerOnColorChangedListener(OnColorChangedListener listener) {
+        mListeners.put(listener, Boolean.TRUE);
+    }
+
+    @Override
+    public void unregisterOnColorChangedListener(OnColorChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Called on the main thread for every change to the file, including the store's own writes.
+     */
+    private void onPreferenceChanged(String key) {
+        if (key == null) {
+            return;
+        }
+        synchronized (mColors) {
+            if (!mPreferences.contains(key)) {
+                mColors.remove(key);
+            } else {
+                try {
+                    mColors.put(key, mPreferences.getInt(key, 0));
+                } catch (ClassCastException e) {
+                    // Not a color
+                    mColors.remove(key);
+                }
+            }
+            markChangedWhileLoading(key);
+        }
+        notifyListeners(key);
+    }
+
+    private void notifyListeners(String key) {
+        if (mListeners.isEmpty()) {
+            return;
+        }
+        // Copied so that a listener may unregister itself
+        OnColorChangedListener[] listeners = mListeners.keySet().toArray(new OnColorChangedListener[mListeners.size()]);
+        for (OnColorChangedListener listener : listeners) {
+            if (listener != null) {
+                listener.onColorChanged(this, key);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.thebluealliance.spectrum;
+
+import com.thebluealliance.spectrum.internal.Instrumentation;
+import com.thebluealliance.spectrum.internal.PaletteWarmer;
+import com.thebluealliance.spectrum.internal.PreferenceWriteBuffer;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.ArrayRes;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+
+/**
+ * Library-wide entry points that aren't tied to a single palette, dialog or preference.
+ */
+public final class Spectrum {
+
+    private static volatile ColorStore sDefaultColorStore;
+
+    private Spectrum() {
+        // Util class
+    }
+
+    /**
+     * Sets the {@link ColorStore} that {@link SpectrumPreference}s and
+     * {@link SpectrumPreferenceCompat}s created from now on read and write their colors through,
+     * such as a {@link SharedPreferencesColorStore} created in
+     * {@link android.app.Application#onCreate()}.
+     *
+     * @param store the store, or null to have preferences use their SharedPreferences
+     */
+    public static void setDefaultColorStore(ColorStore store) {
+        sDefaultColorStore = store;
+    }
+
+    /**
+     * @see #setDefaultColorStore(ColorStore)
+     */
+    public static ColorStore getDefaultColorStore() {
+        return sDefaultColorStore;
+    }
+
+    /**
+     * Installs a listener that receives timings from the library's hot paths, such as building and
+     * measuring palettes and showing dialogs. When none is installed, which is the default, those
+     * paths skip timing altogether. Must be called from the main thread.
+     *
+     * @param metrics the listener, or null to remove the current one
+     */
+    public static void setMetrics(SpectrumMetrics metrics) {
+        Instrumentation.setMetrics(metrics);
+    }
+
+    /**
+     * @see #setMetrics(SpectrumMetrics)
+     */
+    public static SpectrumMetrics getMetrics() {
+        return Instrumentation.getMetrics();
+    }
+
+    /**
+     * Starts buffering the colors set on {@link SpectrumPreference}s and
+     * {@link SpectrumPreferenceCompat}s, until the matching call to {@link #endPreferenceBatch()}.
+     * Use this when setting several color preferences at once, so that they're persisted with a
+     * single {@link android.content.SharedPreferences.Editor#apply()} and each preference notifies
+     * its listeners once. Batches may be nested. Must be called from the main thread.
+     */
+    public static void beginPreferenceBatch() {
+        PreferenceWriteBuffer.beginBatch();
+    }
+
+    /**
+     * Ends a batch started by {@link #beginPreferenceBatch()}. When the outermost batch ends, the
+     * buffered colors are persisted and the preferences that changed notify their listeners.
+     *
+     * @throws IllegalStateException if no batch was started
+     */
+    public static void endPreferenceBatch() {
+        PreferenceWriteBuffer.endBatch();
+    }
+
+    /**
+     * Prepares a palette ahead of time so that the first {@link SpectrumPalette} or
+     * {@link SpectrumDialog} that shows it opens faster. The palette is compiled on a background
+     * thread; its drawables and views are then created on the main thread, a few at a time,
+     * whenever the main thread is idle. For palettes larger than the drawable cache, only the
+     * first colors that fit in it are prepared. May be called from any thread.
+     */
+    public static void prewarm(Context context, @ColorInt int[] colors) {
+        final int[] colorsCopy = colors.clone();
+        prewarm(context, new PaletteRegistry.PaletteProvider() {
+            @NonNull
+            @Override
+            public CompiledPalette createPalette(Context context) {
+                return CompiledPalette.compile(colorsCopy);
+            }
+        }, 0);
+    }
+
+    /**
+     * @see #prewarm(Context, int[])
+     */
+    public static void prewarm(Context context, @NonNull CompiledPalette palette) {
+        prewarm(context, paletteProvider(palette), 0);
+    }
+
+    /**
+     * @param colorsArrayRes an array resource composed of colors or references to colors
+     * @see #prewarm(Context, int[])
+     */
+    public static void prewarm(Context context, @ArrayRes int colorsArrayRes) {
+        prewarm(context, resourceProvider(colorsArrayRes), 0);
+    }
+
+    /**
+     * @param paletteKey the key a palette was registered under with {@link PaletteRegistry}
+     * @see #prewarm(Context, int[])
+     */
+    public static void prewarm(Context context, @NonNull String paletteKey) {
+        prewarm(context, keyProvider(paletteKey), 0);
+    }
+
+    static PaletteRegistry.PaletteProvider paletteProvider(@NonNull final CompiledPalette palette) {
+        return new PaletteRegistry.PaletteProvider() {
+            @NonNull
+            @Override
+            public CompiledPalette createPalette(Context context) {
+                return palette;
+            }
+        };
+    }
+
+    static PaletteRegistry.PaletteProvider resourceProvider(@ArrayRes final int colorsArrayRes) {
+        return new PaletteRegistry.PaletteProvider() {
+            @NonNull
+            @Override
+            public CompiledPalette createPalette(Context context) {
+                return PaletteRegistry.getResourcePalette(context, colorsArrayRes);
+            }
+        };
+    }
+
+    static PaletteRegistry.PaletteProvider keyProvider(@NonNull final String paletteKey) {
+        return new PaletteRegistry.PaletteProvider() {
+            @NonNull
+            @Override
+            public CompiledPalette createPalette(Context context) {
+                return PaletteRegistry.get(context, paletteKey);
+            }
+        };
+    }
+
+    /**
+     * Gets the palette from {@code provider} on a background thread, then prepares it on the main
+     * thread while it's idle.
+     */
+    static void prewarm(Context context, final PaletteRegistry.PaletteProvider provider, final int outlineWidth) {
+        final Context appContext = context.getApplicationContext();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final CompiledPalette palette = provider.createPalette(appContext);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        PaletteWarmer.start(appContext, palette, outlineWidth);
+                    }
+                });
+            }
+        });
+    }
+}
@@ -1,5 +1,7 @@
 package com.thebluealliance.spectrum;
 
+import com.thebluealliance.spectrum.internal.Instrumentation;
+
 import android.app.Dialog;
 import android.content.Context;
 import android.content.DialogInterface;
@@ -13,14 +15,20 @@ import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
 import android.support.v4.app.DialogFragment;
 import android.support.v4.content.ContextCompat;
+import android.support.v4.os.TraceCompat;
 import android.support.v7.app.AlertDialog;
 import android.view.LayoutInflater;
 import android.view.View;
 
+import java.util.UUID;
+
 public class SpectrumDialog extends DialogFragment implements SpectrumPalette.OnColorSelectedListener {
 
     private static final String KEY_TITLE = "title";
-    private static final String KEY_COLORS = "colors";
+    private static final String KEY_PALETTE = "palette";
+    private static final String KEY_PALETTE_KEY = "palette_key";
+    private static final String KEY_GENERATED_PALETTE_KEY = "generated_palette_key";
+    private static final String KEY_PALETTE_RES_ID = "palette_res_id";
     private static final String KEY_SELECTED_COLOR = "selected_color";
     private static final String KEY_ORIGINAL_SELECTED_COLOR = "origina_selected_color";
     private static final String KEY_SHOULD_DISMISS_ON_COLOR_SELECTED = "should_dismiss_on_color_selected";
@@ -29,11 +37,18 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
     private static final String KEY_OUTLINE_WIDTH = "border_width";
     private static final String KEY_FIXED_COLUMN_COUNT = "fixed_column_count";
     private static final String KEY_THEME_RES_ID = "theme_res_id";
+    private static final String KEY_PALETTE_MODE = "palette_mode";
+
+    /**
+     * Palettes with more colors than this aren't saved in the arguments; see
+     * {@link Builder#setColors(CompiledPalette)}
+     */
+    private static final int MAX_PARCELED_COLORS = 1024;
 
     private CharSequence mTitle;
     private CharSequence mPositiveButtonText;
     private CharSequence mNegativeButtonText;
-    private @ColorInt int[] mColors;
+    private CompiledPalette mPalette;
     private @ColorInt int mOriginalSelectedColor = -1;
     private @ColorInt int mSelectedColor = -1;
     private boolean mShouldDismissOnColorSelected = true;
@@ -41,6 +56,16 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
     private int mOutlineWidth = 0;
     private int mFixedColumnCount = -1;
     private int mThemeResId = 0;
+    private int mPaletteMode = SpectrumPalette.MODE_STANDARD;
+    /**
+     * When this dialog started being created, or 0 if no {@link SpectrumMetrics} are installed
+     */
+    private long mShowStartNanos = 0;
+    /**
+     * The key this dialog's palette was registered under by its builder, if it was too large to
+     * save in the arguments
+     */
+    private String mGeneratedPaletteKey;
 
     public SpectrumDialog() {
         // Required empty constructor
@@ -49,6 +74,11 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
     public static class Builder {
         private Context mContext;
         private Bundle mArgs;
+        /**
+         * A palette too large to save in the arguments, registered under a key of its own by
+         * every dialog that's built
+         */
+        private CompiledPalette mLargePalette;
         private OnColorSelectedListener mListener;
 
         public Builder(Context context) {
@@ -104,6 +134,20 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
             return this;
         }
 
+        /**
+         * Sets how the underlying palette creates views for its colors. Use
+         * {@link SpectrumPalette#MODE_VIRTUALIZED} or {@link SpectrumPalette#MODE_CANVAS} for
+         * palettes with many hundreds of colors.
+         *
+         * @param mode one of {@link SpectrumPalette#MODE_STANDARD},
+         *             {@link SpectrumPalette#MODE_VIRTUALIZED} or {@link SpectrumPalette#MODE_CANVAS}
+         * @return This {@link Builder} for method chaining
+         */
+        public Builder setPaletteMode(int mode) {
+            mArgs.putInt(KEY_PALETTE_MODE, mode);
+            return this;
+        }
+
         /**
          * Sets the text for the dialog's positive button.
          *
@@ -153,13 +197,13 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
         }
 
         /**
-         * Sets the colors that will be offered to the user as choices in the dialog.
+         * Sets the colors that will be offered to the user as choices in the dialog. Large
+         * palettes are handled as in {@link #setColors(CompiledPalette)}.
          *
          * @return This {@link Builder} for method chaining
          */
         public Builder setColors(@ColorInt int[] colors) {
-            mArgs.putIntArray(KEY_COLORS, colors);
-            return this;
+            return setColors(CompiledPalette.compile(colors));
         }
 
         /**
@@ -169,10 +213,56 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
          * @return This {@link Builder} for method chaining
          */
         public Builder setColors(@ArrayRes int colorsArrayRes) {
-            mArgs.putIntArray(KEY_COLORS, mContext.getResources().getIntArray(colorsArrayRes));
+            clearPalette();
+            mArgs.putInt(KEY_PALETTE_RES_ID, colorsArrayRes);
             return this;
         }
 
+        /**
+         * Sets the colors that will be offered to the user as choices in the dialog. The palette
+         * is used as is, so a palette compiled once can be shared by every dialog that offers
+         * the same colors.
+         *
+         * Palettes of up to 1024 colors are saved in the dialog's arguments. Larger ones would
+         * risk a {@link android.os.TransactionTooLargeException} when the dialog's state is
+         * saved, so they're registered with {@link PaletteRegistry} under a generated key instead,
+         * and only the key is saved. Such a dialog can't get its palette back after process
+         * death, and dismisses itself if it's restored then; use {@link #setColors(int)} or
+         * {@link #setPalette(String)} for dialogs that must survive it.
+         *
+         * @return This {@link Builder} for method chaining
+         */
+        public Builder setColors(@NonNull CompiledPalette palette) {
+            clearPalette();
+            if (palette.size() <= MAX_PARCELED_COLORS) {
+                mArgs.putParcelable(KEY_PALETTE, palette);
+            } else {
+                mLargePalette = palette;
+            }
+            return this;
+        }
+
+        /**
+         * Sets the colors that will be offered to the user as choices in the dialog to the palette
+         * registered under the given key with {@link PaletteRegistry}. Only the key is saved in
+         * the dialog's arguments, so the palette must also be registered when the dialog is
+         * restored after process death.
+         *
+         * @return This {@link Builder} for method chaining
+         */
+        public Builder setPalette(@NonNull String key) {
+            clearPalette();
+            mArgs.putString(KEY_PALETTE_KEY, key);
+            return this;
+        }
+
+        private void clearPalette() {
+            mLargePalette = null;
+            mArgs.remove(KEY_PALETTE);
+            mArgs.remove(KEY_PALETTE_KEY);
+            mArgs.remove(KEY_PALETTE_RES_ID);
+        }
+
         /**
          * Sets the color that will be selected when the dialog is first shown. If none is
          * specified, the default will be the first color in the array of colors set via
@@ -233,9 +323,42 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
             return this;
         }
 
+        /**
+         * Starts preparing the colors set on this builder so that the dialog opens faster once
+         * it's shown, taking the outline width set on this builder into account. Should be
+         * called well before the dialog is shown, such as when the screen that shows it is
+         * created.
+         *
+         * @return This {@link Builder} for method chaining
+         * @see Spectrum#prewarm(Context, int[])
+         */
+        public Builder prewarm() {
+            PaletteRegistry.PaletteProvider provider;
+            if (mArgs.containsKey(KEY_PALETTE_KEY)) {
+                provider = Spectrum.keyProvider(mArgs.getString(KEY_PALETTE_KEY));
+            } else if (mArgs.containsKey(KEY_PALETTE_RES_ID)) {
+                provider = Spectrum.resourceProvider(mArgs.getInt(KEY_PALETTE_RES_ID));
+            } else if (mArgs.containsKey(KEY_PALETTE)) {
+                provider = Spectrum.paletteProvider((CompiledPalette) mArgs.getParcelable(KEY_PALETTE));
+            } else if (mLargePalette != null) {
+                provider = Spectrum.paletteProvider(mLargePalette);
+            } else {
+                return this;
+            }
+            Spectrum.prewarm(mContext, provider, mArgs.getInt(KEY_OUTLINE_WIDTH, 0));
+            return this;
+        }
+
         public SpectrumDialog build() {
             SpectrumDialog dialog = new SpectrumDialog();
-            dialog.setArguments(mArgs);
+            Bundle args = new Bundle(mArgs);
+            if (mLargePalette != null) {
+                // A key per dialog, so that each one can unregister its palette when it's done
+                String key = "spectrum.dialog." + UUID.randomUUID();
+                PaletteRegistry.register(key, mLargePalette);
+                args.putString(KEY_GENERATED_PALETTE_KEY, key);
+            }
+            dialog.setArguments(args);
             dialog.setOnColorSelectedListener(mListener);
             return dialog;
         }
@@ -254,6 +377,7 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
+        mShowStartNanos = Instrumentation.getMetrics() != null ? System.nanoTime() : 0;
         super.onCreate(savedInstanceState);
 
         // First, initialize values from the arguments, if present
@@ -265,14 +389,27 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
             mTitle = getContext().getText(R.string.default_dialog_title);
         }
 
-        if (args != null && args.containsKey(KEY_COLORS)) {
-            mColors = args.getIntArray(KEY_COLORS);
+        if (args != null && args.containsKey(KEY_GENERATED_PALETTE_KEY)) {
+            mGeneratedPaletteKey = args.getString(KEY_GENERATED_PALETTE_KEY);
+            if (!PaletteRegistry.isRegistered(mGeneratedPaletteKey)) {
+                // Restored after process death, which the palette didn't survive
+                setShowsDialog(false);
+                dismissAllowingStateLoss();
+                return;
+            }
+            mPalette = PaletteRegistry.get(getContext(), mGeneratedPaletteKey);
+        } else if (args != null && args.containsKey(KEY_PALETTE_KEY)) {
+            mPalette = PaletteRegistry.get(getContext(), args.getString(KEY_PALETTE_KEY));
+        } else if (args != null && args.containsKey(KEY_PALETTE_RES_ID)) {
+            mPalette = PaletteRegistry.getResourcePalette(getContext(), args.getInt(KEY_PALETTE_RES_ID));
+        } else if (args != null && args.containsKey(KEY_PALETTE)) {
+            mPalette = args.getParcelable(KEY_PALETTE);
         } else {
             // Default to a single color, black
-            mColors = new int[]{Color.BLACK};
+            mPalette = CompiledPalette.compile(new int[]{Color.BLACK});
         }
 
-        if (mColors == null || mColors.length == 0) {
+        if (mPalette == null || mPalette.size() == 0) {
             throw new IllegalArgumentException("SpectrumDialog must be created with an array of colors");
         }
 
@@ -280,7 +417,7 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
             mSelectedColor = args.getInt(KEY_SELECTED_COLOR);
         } else {
             // Default to the first item of the color array
-            mSelectedColor = mColors[0];
+            mSelectedColor = mPalette.getColor(0);
         }
 
         if (args != null && args.containsKey(KEY_ORIGINAL_SELECTED_COLOR)) {
@@ -319,6 +456,10 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
             mThemeResId = args.getInt(KEY_THEME_RES_ID);
         }
 
+        if (args != null && args.containsKey(KEY_PALETTE_MODE)) {
+            mPaletteMode = args.getInt(KEY_PALETTE_MODE);
+        }
+
         // Next, overwrite any appropriate values if present in the saved instance state
         if (savedInstanceState != null && savedInstanceState.containsKey(KEY_SELECTED_COLOR)) {
             mSelectedColor = savedInstanceState.getInt(KEY_SELECTED_COLOR);
@@ -334,6 +475,7 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
     @NonNull
     @Override
     public Dialog onCreateDialog(Bundle savedInstanceState) {
+        TraceCompat.beginSection("Spectrum:SpectrumDialog.onCreateDialog");
         AlertDialog.Builder builder;
         if (mThemeResId != 0) {
             builder = new AlertDialog.Builder(getContext(), mThemeResId);
@@ -367,9 +509,13 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
             }
         });
 
-        View view = LayoutInflater.from(getContext()).inflate(R.layout.dialog_color_picker, null);
+        // A virtualized palette scrolls by itself, so it can't be wrapped in a ScrollView
+        int layoutResId = mPaletteMode == SpectrumPalette.MODE_VIRTUALIZED
+                ? R.layout.dialog_color_picker_virtualized : R.layout.dialog_color_picker;
+        View view = LayoutInflater.from(getContext()).inflate(layoutResId, null);
         SpectrumPalette palette = (SpectrumPalette) view.findViewById(R.id.palette);
-        palette.setColors(mColors);
+        palette.setPaletteMode(mPaletteMode);
+        palette.setColors(mPalette);
         palette.setSelectedColor(mSelectedColor);
         palette.setOnColorSelectedListener(this);
         if (mOutlineWidth != 0) {
@@ -380,8 +526,11 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
         }
 
         builder.setView(view);
+        AlertDialog dialog = builder.create();
 
-        return builder.create();
+        TraceCompat.endSection();
+        Instrumentation.trackDialogShown(view, SpectrumMetrics.DIALOG_SPECTRUM_DIALOG, mPalette.size(), mShowStartNanos);
+        return dialog;
     }
 
     @Override
@@ -399,6 +548,15 @@ public class SpectrumDialog extends DialogFragment implements SpectrumPalette.On
         mListener = null;
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        // Keep the palette across configuration changes, which recreate the dialog
+        if (mGeneratedPaletteKey != null && (isRemoving() || getActivity() == null || getActivity().isFinishing())) {
+            PaletteRegistry.unregister(mGeneratedPaletteKey);
+        }
+    }
+
     @Override
     public void onColorSelected(@ColorInt int color) {
         mSelectedColor = color;
@@ -0,0 +1,81 @@
+package com.thebluealliance.spectrum;
+
+/**
+ * Receives timings from the library's hot paths, for reporting where time goes in production.
+ * Install one with {@link Spectrum#setMetrics(SpectrumMetrics)}. Every callback is made on the main
+ * thread, right after the work it describes, so implementations should be quick; durations are in
+ * nanoseconds.
+ * <p/>
+ * The same paths are also marked with {@link android.os.Trace} sections, all named
+ * {@code Spectrum:...}, which show up in systrace whether or not a listener is installed.
+ */
+public interface SpectrumMetrics {
+
+    /**
+     * The palette's views were created for the first time
+     */
+    int REBUILD_INITIAL = 0;
+    /**
+     * {@link SpectrumPalette#setColors(CompiledPalette)} or a related method was called
+     */
+    int REBUILD_COLORS_CHANGED = 1;
+    /**
+     * The number of columns changed, because of a new width or a fixed column count
+     */
+    int REBUILD_COLUMNS_CHANGED = 2;
+    /**
+     * {@link SpectrumPalette#setPaletteMode(int)} was called with a different mode
+     */
+    int REBUILD_MODE_CHANGED = 3;
+    /**
+     * The palette was attached to a window again after releasing its views when it was detached
+     */
+    int REBUILD_REATTACHED = 4;
+
+    int DIALOG_SPECTRUM_DIALOG = 0;
+    int DIALOG_PREFERENCE = 1;
+    int DIALOG_PREFERENCE_COMPAT = 2;
+
+    /**
+     * A palette created, rebound or laid out the views for its colors.
+     *
+     * @param reason     one of the {@code REBUILD_} constants
+     * @param colorCount the number of colors in the palette
+     */
+    void onPaletteViewCreated(SpectrumPalette palette, int reason, int colorCount, long durationNanos);
+
+    /**
+     * A palette was measured. Includes any rebuild that the measure pass triggered, which is also
+     * reported through {@link #onPaletteViewCreated}.
+     */
+    void onPaletteMeasured(SpectrumPalette palette, int columnCount, int colorCount, long durationNanos);
+
+    /**
+     * A new view was created for a color, because no pooled view was available.
+     */
+    void onColorItemCreated(long durationNanos);
+
+    /**
+     * A swatch drawable was built because it wasn't cached yet.
+     */
+    void onDrawableCreated(long durationNanos);
+
+    /**
+     * A palette's selection changed, either by the user or through
+     * {@link SpectrumPalette#setSelectedColor(int)}, and the affected items were updated. Doesn't
+     * include the time spent in {@link SpectrumPalette.OnColorSelectedListener}s.
+     *
+     * @param changedItemCount how many items were checked or unchecked
+     */
+    void onSelectionChanged(SpectrumPalette palette, int changedItemCount, long durationNanos);
+
+    /**
+     * A color picker dialog drew for the first time.
+     *
+     * @param dialog        one of the {@code DIALOG_} constants
+     * @param colorCount    the number of colors in the dialog's palette
+     * @param durationNanos the time from when the dialog started being created until right before
+     *                      its first frame was drawn
+     */
+    void onDialogShown(int dialog, int colorCount, long durationNanos);
+}
@@ -1,18 +1,33 @@
 package com.thebluealliance.spectrum;
 
+import com.thebluealliance.spectrum.internal.ColorGridAccessibilityHelper;
+import com.thebluealliance.spectrum.internal.ColorGridRenderer;
 import com.thebluealliance.spectrum.internal.ColorItem;
+import com.thebluealliance.spectrum.internal.ColorItemPool;
+import com.thebluealliance.spectrum.internal.ColorRowAdapter;
+import com.thebluealliance.spectrum.internal.ColorSourceLoader;
 import com.thebluealliance.spectrum.internal.ColorUtil;
-import com.thebluealliance.spectrum.internal.SelectedColorChangedEvent;
-
-import org.greenrobot.eventbus.EventBus;
-import org.greenrobot.eventbus.Subscribe;
+import com.thebluealliance.spectrum.internal.Instrumentation;
+import com.thebluealliance.spectrum.internal.PaletteGeometry;
+import com.thebluealliance.spectrum.internal.SelectionAnimator;
+import com.thebluealliance.spectrum.internal.SelectionModel;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.ColorInt;
+import android.support.v4.os.TraceCompat;
+import android.support.v4.view.ViewCompat;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.AttributeSet;
-import android.util.Log;
+import android.util.SparseArray;
 import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
@@ -26,14 +41,45 @@ import java.util.List;
  */
 public class SpectrumPalette extends LinearLayout {
 
+    /**
+     * Every color gets its own view up front. Best suited to small and medium palettes.
+     */
+    public static final int MODE_STANDARD = 0;
+
+    /**
+     * Only the rows currently on screen exist as views, and rows that scroll off screen are
+     * recycled. Best suited to very large palettes. The palette scrolls by itself in this mode,
+     * so it should not be placed inside a {@link android.widget.ScrollView}.
+     */
+    public static final int MODE_VIRTUALIZED = 1;
+
+    /**
+     * The whole palette is a single view that draws every color itself. Best suited to large
+     * palettes and to palettes shown inside list items.
+     */
+    public static final int MODE_CANVAS = 2;
+
     private static final int DEFAULT_COLUMN_COUNT = 4;
 
+    /**
+     * How long a detached palette keeps its items before returning them to the shared pool. Long
+     * enough for a ViewPager page, list item or fragment transition to reattach it first.
+     */
+    private static final long RELEASE_ITEMS_DELAY_MS = 1000;
+
+    /**
+     * Enough colors to fill the first screenful of most palettes
+     */
+    public static final int DEFAULT_COLOR_SOURCE_PAGE_SIZE = 128;
+
     private int mColorItemDimension;
     private int mColorItemMargin;
-    private @ColorInt int[] mColors;
+    private PaletteGeometry mGeometry;
+    private CompiledPalette mPalette;
     private @ColorInt int mSelectedColor;
     private OnColorSelectedListener mListener;
     private boolean mAutoPadding = false;
+    private boolean mSnapToNearestColor = false;
     private boolean mHasFixedColumnCount = false;
     private int mFixedColumnCount = -1;
     private int mOutlineWidth = 0;
@@ -41,14 +87,94 @@ public class SpectrumPalette extends LinearLayout {
     private int mOriginalPaddingTop = 0;
     private int mOriginalPaddingBottom = 0;
     private boolean mSetPaddingCalledInternally = false;
+    private int mMode = MODE_STANDARD;
 
     private int mNumColumns = 2;
     private int mOldNumColumns = -1;
     private boolean mViewInitialized = false;
+    /**
+     * Why the views will be rebuilt the next time they're created; one of the
+     * {@code SpectrumMetrics.REBUILD_} constants
+     */
+    private int mRebuildReason = SpectrumMetrics.REBUILD_INITIAL;
+    /**
+     * How many items the selection change in progress has checked or unchecked
+     */
+    private int mSelectionChangeCount = 0;
+    /**
+     * True while {@link #onMeasure(int, int)} may rebuild the views, for {@link RebuildDetector}
+     */
+    private boolean mInMeasure = false;
+
+    private ColorItem.OnColorClickListener mItemClickListener = new ColorItem.OnColorClickListener() {
+        @Override
+        public void onColorClicked(@ColorInt int color) {
+            onSelectedColorChanged(color);
+        }
+    };
+
+    private SelectionModel mSelection = new SelectionModel(new SelectionModel.Callback() {
+        @Override
+        public void onItemCheckedChanged(int index, boolean checked) {
+            mSelectionChangeCount++;
+            if (mMode == MODE_STANDARD) {
+                if (index < mItems.size()) {
+                    mSelectionAnimator.add(mItems.get(index), checked);
+                }
+            } else if (mMode == MODE_VIRTUALIZED) {
+                ColorItem item = mAdapter != null ? mAdapter.findItem(mRecyclerView, index) : null;
+                if (item != null) {
+                    mSelectionAnimator.add(item, checked);
+                }
+            } else if (mRenderer != null) {
+                invalidateItem(index);
+                mAccessibilityHelper.invalidateVirtualView(index);
+            }
+        }
+    });
 
-    private EventBus mEventBus;
+    private final SelectionAnimator mSelectionAnimator = new SelectionAnimator();
 
     private List<ColorItem> mItems = new ArrayList<>();
+    private List<LinearLayout> mRows = new ArrayList<>();
+    private List<View> mSpacers = new ArrayList<>();
+
+    private RecyclerView mRecyclerView;
+    private ColorRowAdapter mAdapter;
+
+    private ColorSourceLoader mColorSourceLoader;
+    private int mColorSourcePageSize = DEFAULT_COLOR_SOURCE_PAGE_SIZE;
+
+    private ColorSourceLoader.Listener mColorSourceListener = new ColorSourceLoader.Listener() {
+        @Override
+        public void onColorsLoaded(@ColorInt int[] colors) {
+            appendColors(colors);
+        }
+    };
+
+    private Runnable mLoadMoreColorsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            loadMoreColorsIfNeeded();
+        }
+    };
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private Runnable mReleaseItemsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            releaseItemsIfDetached();
+        }
+    };
+
+    private ColorGridRenderer mRenderer;
+    private ColorGridAccessibilityHelper mAccessibilityHelper;
+    private final Rect mDirtyBounds = new Rect();
+    /**
+     * The item that the click being performed selects, in canvas mode, or -1
+     */
+    private int mClickedIndex = -1;
 
     public SpectrumPalette(Context context) {
         super(context);
@@ -62,15 +188,18 @@ public class SpectrumPalette extends LinearLayout {
 
         int id = a.getResourceId(R.styleable.SpectrumPalette_spectrum_colors, 0);
         if (id != 0) {
-            mColors = getContext().getResources().getIntArray(id);
+            mPalette = PaletteRegistry.getResourcePalette(getContext(), id);
+            mSelection.setIndex(mPalette.getIndex());
         }
 
         mAutoPadding = a.getBoolean(R.styleable.SpectrumPalette_spectrum_autoPadding, false);
+        mSnapToNearestColor = a.getBoolean(R.styleable.SpectrumPalette_spectrum_snapToNearestColor, false);
         mOutlineWidth = a.getDimensionPixelSize(R.styleable.SpectrumPalette_spectrum_outlineWidth, 0);
         mFixedColumnCount = a.getInt(R.styleable.SpectrumPalette_spectrum_columnCount, -1);
         if (mFixedColumnCount != -1) {
             mHasFixedColumnCount = true;
         }
+        mMode = a.getInt(R.styleable.SpectrumPalette_spectrum_mode, MODE_STANDARD);
 
         a.recycle();
 
@@ -81,13 +210,12 @@ public class SpectrumPalette extends LinearLayout {
     }
 
     private void init() {
-        mEventBus = new EventBus();
-        mEventBus.register(this);
-
         mColorItemDimension = getResources().getDimensionPixelSize(R.dimen.color_item_small);
         mColorItemMargin = getResources().getDimensionPixelSize(R.dimen.color_item_margins_small);
+        mGeometry = new PaletteGeometry(mColorItemDimension, mColorItemMargin);
 
         setOrientation(LinearLayout.VERTICAL);
+        setWillNotDraw(mMode != MODE_CANVAS);
     }
 
     /**
@@ -96,20 +224,196 @@ public class SpectrumPalette extends LinearLayout {
      * @param colors an array of ARGB colors
      */
     public void setColors(@ColorInt int[] colors) {
-        mColors = colors;
+        setColors(colors != null ? CompiledPalette.compile(colors) : null);
+    }
+
+    /**
+     * Sets the colors that this palette will display. Unlike {@link #setColors(int[])}, this
+     * reuses the data that was derived from the colors when the palette was compiled.
+     *
+     * @param palette a compiled palette
+     */
+    public void setColors(CompiledPalette palette) {
+        if (mColorSourceLoader != null) {
+            mColorSourceLoader.cancel();
+            mColorSourceLoader = null;
+        }
+        mPalette = palette;
+        mSelection.setIndex(palette != null ? palette.getIndex() : null);
         mViewInitialized = false;
+        mRebuildReason = SpectrumMetrics.REBUILD_COLORS_CHANGED;
         createPaletteView();
     }
 
+    /**
+     * Streams this palette's colors from {@code source} in pages of
+     * {@link #DEFAULT_COLOR_SOURCE_PAGE_SIZE} colors.
+     *
+     * @see #setColorSource(ColorSource, int)
+     */
+    public void setColorSource(ColorSource source) {
+        setColorSource(source, DEFAULT_COLOR_SOURCE_PAGE_SIZE);
+    }
+
+    /**
+     * Streams this palette's colors from {@code source}, replacing its current colors. The first
+     * page is requested right away and shown as soon as it arrives; each later page is appended
+     * after the colors that are already showing, without rebuilding them. In
+     * {@link #MODE_VIRTUALIZED}, pages are requested as the user scrolls towards the end of the
+     * loaded colors; in the other modes, which show every color at once, pages are requested one
+     * after another until the source runs out.
+     * <p/>
+     * Colors can be selected while they're being streamed in; a selected color that hasn't been
+     * loaded yet is checked when it arrives.
+     *
+     * @param source   the source of the colors, or null to clear this palette
+     * @param pageSize how many colors to request at a time
+     */
+    public void setColorSource(ColorSource source, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be at least 1");
+        }
+        setColors((CompiledPalette) null);
+        if (source == null) {
+            return;
+        }
+        mColorSourcePageSize = pageSize;
+        mColorSourceLoader = new ColorSourceLoader(source, pageSize, mColorSourceListener);
+        mColorSourceLoader.loadNextPage();
+    }
+
+    /**
+     * Adds a page of colors from the color source to the end of this palette.
+     */
+    private void appendColors(@ColorInt int[] colors) {
+        int oldColorCount = mPalette != null ? mPalette.size() : 0;
+        mPalette = mPalette != null ? mPalette.append(colors) : CompiledPalette.compile(colors);
+        mSelection.setIndex(mPalette.getIndex());
+
+        // Without views yet, the next layout creates them for every color at once
+        if (mViewInitialized) {
+            if (mMode == MODE_STANDARD) {
+                appendToStandardPaletteView(oldColorCount);
+            } else if (mMode == MODE_VIRTUALIZED) {
+                mAdapter.appendColors(mPalette);
+            } else if (mRenderer != null) {
+                int pressedIndex = mRenderer.getPressedIndex();
+                mRenderer.setPalette(mPalette, mNumColumns);
+                mRenderer.setPressedIndex(pressedIndex);
+                invalidate();
+                mAccessibilityHelper.invalidateRoot();
+            }
+        }
+        requestLayout();
+
+        // Posted so that sources that deliver synchronously don't recurse once per page
+        post(mLoadMoreColorsRunnable);
+    }
+
+    /**
+     * Requests the next page from the color source, if there is one; in virtualized mode, only if
+     * the user has scrolled to within half a page of the end of the loaded colors.
+     */
+    private void loadMoreColorsIfNeeded() {
+        if (mColorSourceLoader == null || mColorSourceLoader.isLoading() || mColorSourceLoader.isEndReached()) {
+            return;
+        }
+        if (mMode == MODE_VIRTUALIZED) {
+            if (mRecyclerView == null || mPalette == null) {
+                return;
+            }
+            LinearLayoutManager layoutManager = (LinearLayoutManager) mRecyclerView.getLayoutManager();
+            int lastVisibleRow = layoutManager.findLastVisibleItemPosition();
+            if (lastVisibleRow == RecyclerView.NO_POSITION) {
+                // Not laid out yet; checked again once it is
+                return;
+            }
+            int colorsBelow = mPalette.size() - (lastVisibleRow + 1) * mNumColumns;
+            if (colorsBelow > mColorSourcePageSize / 2) {
+                return;
+            }
+        }
+        mColorSourceLoader.loadNextPage();
+    }
+
     /**
      * Sets the currently selected color. This should be one of the colors specified via
-     * {@link #setColors(int[])}; behavior is undefined if {@code color} is not among those colors.
+     * {@link #setColors(int[])}; behavior is undefined if {@code color} is not among those colors,
+     * unless {@link #setSnapToNearestColor(boolean)} is enabled.
      *
      * @param color the color to be marked as selected
      */
     public void setSelectedColor(@ColorInt int color) {
-        mSelectedColor = color;
-        mEventBus.post(new SelectedColorChangedEvent(mSelectedColor));
+        if (mSnapToNearestColor && mPalette != null && mPalette.size() > 0) {
+            color = mPalette.getColor(mPalette.nearestIndex(color));
+        }
+        onSelectedColorChanged(color);
+    }
+
+    /**
+     * When enabled, colors passed to {@link #setSelectedColor(int)} that aren't in this palette
+     * select the palette color that looks the most like them instead; see
+     * {@link CompiledPalette#nearestIndex(int)}. Colors should be set before the selected color.
+     *
+     * @param snap if colors that aren't in this palette should be snapped to the nearest one
+     */
+    public void setSnapToNearestColor(boolean snap) {
+        mSnapToNearestColor = snap;
+    }
+
+    /**
+     * @see #setSnapToNearestColor(boolean)
+     */
+    public boolean getSnapToNearestColor() {
+        return mSnapToNearestColor;
+    }
+
+    /**
+     * Selects the color at the given position of the array passed to {@link #setColors(int[])}.
+     *
+     * @param index the position of the color to be marked as selected
+     */
+    public void setSelectedIndex(int index) {
+        setSelectedColor(mPalette.getColor(index));
+    }
+
+    /**
+     * @return the first position of the selected color in the array passed to
+     * {@link #setColors(int[])}, or -1 if the selected color isn't in the palette
+     */
+    public int getSelectedIndex() {
+        return mSelection.getSelectedIndex();
+    }
+
+    /**
+     * Sets how this palette creates views for its colors.
+     *
+     * @param mode one of {@link #MODE_STANDARD}, {@link #MODE_VIRTUALIZED} or {@link #MODE_CANVAS}
+     */
+    public void setPaletteMode(int mode) {
+        if (mode == mMode) {
+            return;
+        }
+        mMode = mode;
+        mViewInitialized = false;
+        mRebuildReason = SpectrumMetrics.REBUILD_MODE_CHANGED;
+        setWillNotDraw(mMode != MODE_CANVAS);
+        if (mMode != MODE_CANVAS) {
+            // The other modes' items are real views that are accessible by themselves
+            ViewCompat.setAccessibilityDelegate(this, null);
+        }
+        requestLayout();
+        invalidate();
+        // Modes other than virtualized load every page of a color source
+        post(mLoadMoreColorsRunnable);
+    }
+
+    /**
+     * @return one of {@link #MODE_STANDARD}, {@link #MODE_VIRTUALIZED} or {@link #MODE_CANVAS}
+     * @see #setPaletteMode(int)
+     */
+    public int getPaletteMode() {
+        return mMode;
     }
 
     /**
@@ -121,6 +425,9 @@ public class SpectrumPalette extends LinearLayout {
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        SpectrumMetrics metrics = Instrumentation.getMetrics();
+        long start = metrics != null ? System.nanoTime() : 0;
+        TraceCompat.beginSection("Spectrum:onMeasure");
 
         int widthMode = MeasureSpec.getMode(widthMeasureSpec);
         int widthSize = MeasureSpec.getSize(widthMeasureSpec);
@@ -165,33 +472,29 @@ public class SpectrumPalette extends LinearLayout {
         if (mAutoPadding) {
             setPaddingInternal(getPaddingLeft(), mOriginalPaddingTop + mComputedVerticalPadding, getPaddingRight(), mOriginalPaddingBottom + mComputedVerticalPadding);
         }
+        mInMeasure = true;
         createPaletteView();
+        mInMeasure = false;
 
         super.onMeasure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
+
+        TraceCompat.endSection();
+        if (metrics != null) {
+            metrics.onPaletteMeasured(this, mNumColumns, mPalette != null ? mPalette.size() : 0,
+                    System.nanoTime() - start);
+        }
     }
 
     private int computeColumnCount(int maxWidth) {
-        int numColumns = 0;
-        while (((numColumns + 1) * mColorItemDimension) + ((numColumns + 1) * 2 * mColorItemMargin) <= maxWidth) {
-            numColumns++;
-        }
-        return numColumns;
+        return mGeometry.computeColumnCount(maxWidth);
     }
 
     private int computeWidthForNumColumns(int columnCount) {
-        return columnCount * (mColorItemDimension + 2 * mColorItemMargin);
+        return mGeometry.computeWidthForNumColumns(columnCount);
     }
 
     private int computeHeight(int columnCount) {
-        if (mColors == null) {
-            // View does not have any colors to display, so we won't take up any room
-            return 0;
-        }
-        int rowCount = mColors.length / columnCount;
-        if (mColors.length % columnCount != 0) {
-            rowCount++;
-        }
-        return rowCount * (mColorItemDimension + 2 * mColorItemMargin);
+        return mGeometry.computeHeight(mPalette != null ? mPalette.size() : 0, columnCount);
     }
 
 
@@ -221,44 +524,429 @@ public class SpectrumPalette extends LinearLayout {
      * {@link LinearLayout}s. This class itself subclasses {@link LinearLayout} and is set up in
      * the vertical orientation. Rows consist of horizontal {@link LinearLayout}s which themselves
      * hold views that display the individual colors.
+     * <p/>
+     * Views from a previous call are reused wherever possible; see
+     * {@link #createStandardPaletteView()}.
      */
     protected void createPaletteView() {
         // Only create the view if it hasn't been created yet or if the number of columns has changed
         if (mViewInitialized && mNumColumns == mOldNumColumns) {
             return;
         }
+        int reason;
+        if (mOldNumColumns == -1) {
+            reason = SpectrumMetrics.REBUILD_INITIAL;
+        } else if (mViewInitialized) {
+            reason = SpectrumMetrics.REBUILD_COLUMNS_CHANGED;
+        } else {
+            reason = mRebuildReason;
+        }
+        if (RebuildDetector.isEnabled()) {
+            RebuildDetector.onRebuild(this, reason, mInMeasure, mPalette, mNumColumns, mMode);
+        }
+        SpectrumMetrics metrics = Instrumentation.getMetrics();
+        long start = metrics != null ? System.nanoTime() : 0;
+        TraceCompat.beginSection("Spectrum:createPaletteView");
+
         mViewInitialized = true;
         mOldNumColumns = mNumColumns;
+        // Items may be rebound or released below
+        mSelectionAnimator.end();
+
+        if (mMode == MODE_VIRTUALIZED) {
+            createVirtualizedPaletteView();
+        } else if (mMode == MODE_CANVAS) {
+            createCanvasPaletteView();
+        } else {
+            createStandardPaletteView();
+        }
 
-        removeAllViews();
+        TraceCompat.endSection();
+        if (metrics != null) {
+            metrics.onPaletteViewCreated(this, reason, mPalette != null ? mPalette.size() : 0,
+                    System.nanoTime() - start);
+        }
+    }
 
-        if (mColors == null) {
+    /**
+     * Lays out one {@link ColorItem} per color in rows. Existing items are diffed against the new
+     * colors: items whose color is still present are kept as they are, leftover items are rebound
+     * to the new colors, and only the difference in count is created or released. Rows whose
+     * contents don't change aren't touched, so appending colors or changing the column count only
+     * re-parents the items that actually move.
+     */
+    private void createStandardPaletteView() {
+        if (mPalette == null) {
+            clearStandardPaletteView();
+            return;
+        }
+        if (mNumColumns <= 0) {
             return;
         }
 
-        // Add rows
-        int numItemsInRow = 0;
+        // If another mode's views are showing, start from detached rows
+        boolean rowsAttached = getChildCount() == mRows.size();
+        for (int r = 0; rowsAttached && r < mRows.size(); r++) {
+            rowsAttached = getChildAt(r) == mRows.get(r);
+        }
+        if (!rowsAttached) {
+            removeAllViews();
+        }
 
-        LinearLayout row = createRow();
-        for (int i = 0; i < mColors.length; i++) {
-            View colorItem = createColorItem(mColors[i], mSelectedColor);
-            row.addView(colorItem);
-            numItemsInRow++;
+        // Keep the items whose color is unchanged; everything else can be rebound
+        ColorItem[] items = new ColorItem[mPalette.size()];
+        SparseArray<ColorItem> itemsByColor = new SparseArray<>(mItems.size());
+        List<ColorItem> spareItems = new ArrayList<>();
+        for (ColorItem item : mItems) {
+            if (itemsByColor.get(item.getColor()) == null) {
+                itemsByColor.put(item.getColor(), item);
+            } else {
+                spareItems.add(item);
+            }
+        }
+        for (int i = 0; i < mPalette.size(); i++) {
+            ColorItem item = itemsByColor.get(mPalette.getColor(i));
+            if (item != null) {
+                itemsByColor.remove(mPalette.getColor(i));
+                items[i] = item;
+            }
+        }
+        for (int i = 0; i < itemsByColor.size(); i++) {
+            spareItems.add(itemsByColor.valueAt(i));
+        }
 
-            if (numItemsInRow == mNumColumns) {
-                addView(row);
+        int spareItemsUsed = 0;
+        for (int i = 0; i < mPalette.size(); i++) {
+            if (items[i] != null) {
+                continue;
+            }
+            if (spareItemsUsed < spareItems.size()) {
+                items[i] = spareItems.get(spareItemsUsed++);
+                items[i].bind(mPalette.getColor(i), mPalette.getColor(i) == mSelectedColor);
+            } else {
+                items[i] = createColorItem(mPalette.getColor(i), mSelectedColor);
+            }
+        }
+
+        mItems.clear();
+        for (ColorItem item : items) {
+            mItems.add(item);
+        }
+
+        // Spacers fill out the last row so that it lines up with the rest of the grid
+        int rowCount = (mPalette.size() + mNumColumns - 1) / mNumColumns;
+        int spacerCount = rowCount * mNumColumns - mPalette.size();
+        while (mSpacers.size() < spacerCount) {
+            mSpacers.add(createSpacer());
+        }
+
+        // Empty every row whose contents will change, as well as rows that are no longer needed,
+        // before filling any of them; an item may be moving to a row that comes before its old one
+        boolean[] rowUnchanged = new boolean[rowCount];
+        for (int r = 0; r < mRows.size(); r++) {
+            LinearLayout row = mRows.get(r);
+            if (r < rowCount && row.getParent() == this && rowMatches(row, r, items)) {
+                rowUnchanged[r] = true;
+            } else {
+                row.removeAllViews();
+            }
+        }
+        while (mRows.size() > rowCount) {
+            removeView(mRows.remove(mRows.size() - 1));
+        }
+
+        for (int i = spareItemsUsed; i < spareItems.size(); i++) {
+            releaseColorItem(spareItems.get(i));
+        }
+
+        for (int r = 0; r < rowCount; r++) {
+            LinearLayout row;
+            if (r < mRows.size()) {
+                row = mRows.get(r);
+            } else {
                 row = createRow();
-                numItemsInRow = 0;
+                mRows.add(row);
             }
+            if (!rowUnchanged[r]) {
+                for (int c = 0; c < mNumColumns; c++) {
+                    row.addView(getGridChild(r * mNumColumns + c, items));
+                }
+            }
+            if (row.getParent() != this) {
+                addView(row);
+            }
+        }
+    }
+
+    /**
+     * Adds items for the colors from {@code oldColorCount} onwards to the standard grid. Items
+     * that were already showing stay where they are; only the spacers in the last row are
+     * replaced.
+     */
+    private void appendToStandardPaletteView(int oldColorCount) {
+        if (mNumColumns <= 0) {
+            return;
+        }
+
+        int filledInLastRow = oldColorCount % mNumColumns;
+        if (filledInLastRow != 0) {
+            LinearLayout lastRow = mRows.get(mRows.size() - 1);
+            lastRow.removeViews(filledInLastRow, lastRow.getChildCount() - filledInLastRow);
         }
 
-        if (numItemsInRow > 0) {
-            while (numItemsInRow < mNumColumns) {
-                row.addView(createSpacer());
-                numItemsInRow++;
+        for (int i = oldColorCount; i < mPalette.size(); i++) {
+            ColorItem item = createColorItem(mPalette.getColor(i), mSelectedColor);
+            mItems.add(item);
+            int rowIndex = i / mNumColumns;
+            if (rowIndex == mRows.size()) {
+                LinearLayout row = createRow();
+                mRows.add(row);
+                addView(row);
+            }
+            mRows.get(rowIndex).addView(item);
+        }
+
+        int spacerCount = mRows.size() * mNumColumns - mPalette.size();
+        while (mSpacers.size() < spacerCount) {
+            mSpacers.add(createSpacer());
+        }
+        LinearLayout lastRow = mRows.get(mRows.size() - 1);
+        for (int i = 0; i < spacerCount; i++) {
+            lastRow.addView(mSpacers.get(i));
+        }
+    }
+
+    /**
+     * @return true if the given row already holds exactly the views that belong in it
+     */
+    private boolean rowMatches(LinearLayout row, int rowIndex, ColorItem[] items) {
+        if (row.getChildCount() != mNumColumns) {
+            return false;
+        }
+        for (int c = 0; c < mNumColumns; c++) {
+            if (row.getChildAt(c) != getGridChild(rowIndex * mNumColumns + c, items)) {
+                return false;
             }
-            addView(row);
         }
+        return true;
+    }
+
+    /**
+     * @return the view at the given position in the grid; either an item or a spacer
+     */
+    private View getGridChild(int position, ColorItem[] items) {
+        return position < items.length ? items[position] : mSpacers.get(position - items.length);
+    }
+
+    /**
+     * Removes all rows and releases all items created by {@link #createStandardPaletteView()}.
+     */
+    private void clearStandardPaletteView() {
+        for (LinearLayout row : mRows) {
+            row.removeAllViews();
+            removeView(row);
+        }
+        mRows.clear();
+        for (ColorItem item : mItems) {
+            releaseColorItem(item);
+        }
+        mItems.clear();
+    }
+
+    /**
+     * Sets up a {@link RecyclerView} as this palette's only child. Each of its items is a row of
+     * colors, so only the rows that are on screen ever exist as views.
+     */
+    private void createVirtualizedPaletteView() {
+        if (mRecyclerView == null) {
+            mAdapter = new ColorRowAdapter(mItemClickListener, mSelectionAnimator, mColorItemDimension,
+                    mColorItemMargin);
+            mRecyclerView = new RecyclerView(getContext());
+            mRecyclerView.setLayoutParams(new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT,
+                    LayoutParams.MATCH_PARENT));
+            mRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+            mRecyclerView.setHasFixedSize(true);
+            mRecyclerView.setItemAnimator(null);
+            mRecyclerView.setAdapter(mAdapter);
+            mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                    // Also called after layouts that change which rows are visible, such as the
+                    // first one
+                    loadMoreColorsIfNeeded();
+                }
+            });
+        }
+
+        if (mRecyclerView.getParent() != this) {
+            clearStandardPaletteView();
+            removeAllViews();
+            addView(mRecyclerView);
+        }
+
+        mAdapter.setSelectedColor(mSelectedColor);
+        mAdapter.setOutlineWidth(mOutlineWidth);
+        mAdapter.setColors(mPalette, mNumColumns);
+    }
+
+    /**
+     * Removes any child views; in canvas mode, this palette draws all of its colors itself.
+     */
+    private void createCanvasPaletteView() {
+        if (mRenderer == null) {
+            mRenderer = new ColorGridRenderer(getContext(), mColorItemDimension, mColorItemMargin);
+            mAccessibilityHelper = new ColorGridAccessibilityHelper(this, mRenderer, mItemClickListener);
+        }
+        ViewCompat.setAccessibilityDelegate(this, mAccessibilityHelper);
+        clearStandardPaletteView();
+        if (getChildCount() > 0) {
+            removeAllViews();
+        }
+
+        mRenderer.setSelectedColor(mSelectedColor);
+        mRenderer.setOutlineWidth(mOutlineWidth);
+        mRenderer.setPalette(mPalette, mNumColumns);
+        invalidate();
+        mAccessibilityHelper.invalidateRoot();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mMainHandler.removeCallbacks(mReleaseItemsRunnable);
+        if (!mViewInitialized) {
+            // Items were released when this palette was detached
+            requestLayout();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mSelectionAnimator.end();
+        if (mMode == MODE_STANDARD && !mItems.isEmpty()) {
+            // Palettes that are reattached soon keep their views as they are
+            mMainHandler.postDelayed(mReleaseItemsRunnable, RELEASE_ITEMS_DELAY_MS);
+        }
+    }
+
+    /**
+     * Lets other palettes reuse this palette's items if it has stayed detached, and if the shared
+     * pool can take all of them; otherwise they're left to be collected along with this palette.
+     * The items are recreated if it's reattached.
+     */
+    private void releaseItemsIfDetached() {
+        if (ViewCompat.isAttachedToWindow(this) || mMode != MODE_STANDARD || mItems.isEmpty()
+                || ColorItemPool.getFreeCapacity() < mItems.size()) {
+            return;
+        }
+        clearStandardPaletteView();
+        mViewInitialized = false;
+        mRebuildReason = SpectrumMetrics.REBUILD_REATTACHED;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        if (mMode == MODE_CANVAS && mRenderer != null) {
+            // Center the grid horizontally, the same way rows are centered in the other modes
+            int contentWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+            int gridLeft = getPaddingLeft() + (contentWidth - computeWidthForNumColumns(mNumColumns)) / 2;
+            mRenderer.setGridOrigin(gridLeft, getPaddingTop());
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mMode == MODE_CANVAS && mRenderer != null) {
+            mRenderer.draw(canvas);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mMode != MODE_CANVAS || mRenderer == null) {
+            return super.onTouchEvent(event);
+        }
+
+        int pressedIndex = mRenderer.getPressedIndex();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                int index = mRenderer.getIndexAt(event.getX(), event.getY());
+                if (index == -1) {
+                    return false;
+                }
+                setPressedIndex(index);
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (pressedIndex != -1 && mRenderer.getIndexAt(event.getX(), event.getY()) != pressedIndex) {
+                    setPressedIndex(-1);
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                if (pressedIndex != -1) {
+                    setPressedIndex(-1);
+                    mClickedIndex = pressedIndex;
+                    performClick();
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                setPressedIndex(-1);
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * In canvas mode, also selects the item that was tapped, so that click listeners and
+     * accessibility events see the same click as with the other modes' items.
+     */
+    @Override
+    public boolean performClick() {
+        boolean handled = super.performClick();
+        int index = mClickedIndex;
+        mClickedIndex = -1;
+        if (mMode != MODE_CANVAS || index == -1 || index >= mPalette.size()) {
+            return handled;
+        }
+        if (!handled) {
+            // super.performClick() only plays the sound when there's an OnClickListener
+            playSoundEffect(SoundEffectConstants.CLICK);
+        }
+        onSelectedColorChanged(mPalette.getColor(index));
+        return true;
+    }
+
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        if (mMode == MODE_CANVAS && mAccessibilityHelper != null
+                && mAccessibilityHelper.dispatchHoverEvent(event)) {
+            return true;
+        }
+        return super.dispatchHoverEvent(event);
+    }
+
+    private void setPressedIndex(int index) {
+        int oldIndex = mRenderer.getPressedIndex();
+        if (index == oldIndex) {
+            return;
+        }
+        mRenderer.setPressedIndex(index);
+        invalidateItem(oldIndex);
+        invalidateItem(index);
+    }
+
+    /**
+     * Redraws only the area occupied by the item at the given index. Used in canvas mode.
+     */
+    private void invalidateItem(int index) {
+        if (index == -1) {
+            return;
+        }
+        mRenderer.getItemBounds(index, mDirtyBounds);
+        invalidate(mDirtyBounds);
     }
 
     private LinearLayout createRow() {
@@ -272,17 +960,21 @@ public class SpectrumPalette extends LinearLayout {
     }
 
     private ColorItem createColorItem(int color, int selectedColor) {
-        ColorItem view = new ColorItem(getContext(), color, color == selectedColor, mEventBus);
+        ColorItem view = ColorItemPool.obtain(getContext(), mItemClickListener, color, color == selectedColor, mOutlineWidth);
         LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(mColorItemDimension, mColorItemDimension);
         params.setMargins(mColorItemMargin, mColorItemMargin, mColorItemMargin, mColorItemMargin);
         view.setLayoutParams(params);
-        if (mOutlineWidth != 0) {
-            view.setOutlineWidth(mOutlineWidth);
-        }
-        mItems.add(view);
         return view;
     }
 
+    /**
+     * Called for items that are no longer part of this palette. They're returned to the shared
+     * {@link ColorItemPool}, which also stops them from reporting clicks to this palette.
+     */
+    private void releaseColorItem(ColorItem item) {
+        ColorItemPool.release(item);
+    }
+
     private ImageView createSpacer() {
         ImageView view = new ImageView(getContext());
         LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(mColorItemDimension, mColorItemDimension);
@@ -291,9 +983,33 @@ public class SpectrumPalette extends LinearLayout {
         return view;
     }
 
-    @Subscribe
-    public void onSelectedColorChanged(SelectedColorChangedEvent event) {
-        mSelectedColor = event.getSelectedColor();
+    /**
+     * Called when a color is selected, either by the user or through
+     * {@link #setSelectedColor(int)}.
+     */
+    private void onSelectedColorChanged(@ColorInt int color) {
+        SpectrumMetrics metrics = Instrumentation.getMetrics();
+        long start = metrics != null ? System.nanoTime() : 0;
+        TraceCompat.beginSection("Spectrum:onSelectedColorChanged");
+        mSelectionChangeCount = 0;
+
+        mSelectedColor = color;
+        if (mAdapter != null) {
+            mAdapter.setSelectedColor(mSelectedColor);
+        }
+        if (mRenderer != null) {
+            mRenderer.setSelectedColor(mSelectedColor);
+        }
+        // Only checks and unchecks the items whose state actually changes, finishing the previous
+        // selection change first if it's still being animated
+        mSelectionAnimator.end();
+        mSelection.setSelectedColor(mSelectedColor);
+        mSelectionAnimator.start();
+
+        TraceCompat.endSection();
+        if (metrics != null) {
+            metrics.onSelectionChanged(this, mSelectionChangeCount, System.nanoTime() - start);
+        }
         if (mListener != null) {
             mListener.onColorSelected(mSelectedColor);
         }
@@ -322,6 +1038,13 @@ public class SpectrumPalette extends LinearLayout {
         for (ColorItem item : mItems) {
             item.setOutlineWidth(width);
         }
+        if (mAdapter != null) {
+            mAdapter.setOutlineWidth(width);
+        }
+        if (mRenderer != null) {
+            mRenderer.setOutlineWidth(width);
+            invalidate();
+        }
     }
 
     /**
@@ -330,18 +1053,17 @@ public class SpectrumPalette extends LinearLayout {
      * @param columnCount how many columns to use
      */
     public void setFixedColumnCount(int columnCount) {
-        if (columnCount > 0) {
-            Log.d("spectrum", "set column count to " + columnCount);
-            mHasFixedColumnCount = true;
-            mFixedColumnCount = columnCount;
-            requestLayout();
-            invalidate();
-        } else {
-            mHasFixedColumnCount = false;
-            mFixedColumnCount = -1;
-            requestLayout();
-            invalidate();
+        boolean hasFixedColumnCount = columnCount > 0;
+        if (!hasFixedColumnCount) {
+            columnCount = -1;
+        }
+        if (hasFixedColumnCount == mHasFixedColumnCount && columnCount == mFixedColumnCount) {
+            return;
         }
+        mHasFixedColumnCount = hasFixedColumnCount;
+        mFixedColumnCount = columnCount;
+        // The new column count is picked up, and the views rebuilt if needed, when measuring
+        requestLayout();
     }
 
 }
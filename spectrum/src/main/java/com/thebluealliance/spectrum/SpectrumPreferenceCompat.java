@@ -11,11 +11,14 @@ import android.support.v4.app.DialogFragment;
 import android.support.v7.preference.DialogPreference;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceFragmentCompat;
+import android.support.v7.preference.PreferenceManager;
 import android.support.v7.preference.PreferenceViewHolder;
 import android.util.AttributeSet;
 import android.view.View;
 
 import com.thebluealliance.spectrum.internal.ColorCircleDrawable;
+import com.thebluealliance.spectrum.internal.PreferenceChangeDispatcher;
+import com.thebluealliance.spectrum.internal.PreferenceWriteBuffer;
 import com.thebluealliance.spectrum.internal.SpectrumPreferenceDialogFragmentCompat;
 
 /**
@@ -47,18 +50,53 @@ public class SpectrumPreferenceCompat extends DialogPreference {
     private static final @ColorInt int DEFAULT_VALUE = Color.BLACK;
     public static final int ALPHA_DISABLED = 97; //38% alpha
 
-    private @ColorInt int[] mColors;
+    private CompiledPalette mPalette;
+    private String mPaletteKey;
     private @ColorInt int mCurrentValue;
     private boolean mCloseOnSelected = true;
     private boolean mValueSet = false;
     private View mColorView;
+    /**
+     * Reused for every bind; only its properties change
+     */
+    private ColorCircleDrawable mColorDrawable;
+    private int mDisabledOutlineWidth = -1;
     private int mOutlineWidth = 0;
     private int mFixedColumnCount = -1;
+    private boolean mWriteBehind = false;
+    private ColorStore mColorStore;
+    /**
+     * Whether this preference was persistent before a {@link ColorStore} took over persistence
+     */
+    private boolean mPersistentWithoutStore;
 
+    private final Runnable mNotifyChanged = new Runnable() {
+        @Override
+        public void run() {
+            notifyChanged();
+        }
+    };
+
+    /**
+     * Only called for changes to this preference's key; see {@link PreferenceChangeDispatcher}, which
+     * only holds it weakly
+     */
     private SharedPreferences.OnSharedPreferenceChangeListener mListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
         public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
-            if(getKey().equals(key)){
-                mCurrentValue = prefs.getInt(key, mCurrentValue);
+            mCurrentValue = prefs.getInt(key, mCurrentValue);
+            updateColorView();
+        }
+    };
+
+    /**
+     * Picks up changes made to this preference's color outside of it while it uses a
+     * {@link ColorStore}, which only holds it weakly
+     */
+    private ColorStore.OnColorChangedListener mStoreListener = new ColorStore.OnColorChangedListener() {
+        @Override
+        public void onColorChanged(ColorStore store, String key) {
+            if (store == mColorStore && key.equals(getKey())) {
+                readColorFromStore();
                 updateColorView();
             }
         }
@@ -71,8 +109,9 @@ public class SpectrumPreferenceCompat extends DialogPreference {
         try {
             int id = a.getResourceId(R.styleable.SpectrumPreference_spectrum_colors, 0);
             if (id != 0) {
-                mColors = getContext().getResources().getIntArray(id);
+                mPalette = PaletteRegistry.getResourcePalette(getContext(), id);
             }
+            mPaletteKey = a.getString(R.styleable.SpectrumPreference_spectrum_palette);
             mCloseOnSelected = a.getBoolean(R.styleable.SpectrumPreference_spectrum_closeOnSelected, true);
             mOutlineWidth = a.getDimensionPixelSize(R.styleable.SpectrumPalette_spectrum_outlineWidth, 0);
             mFixedColumnCount = a.getInt(R.styleable.SpectrumPalette_spectrum_columnCount, -1);
@@ -83,18 +122,42 @@ public class SpectrumPreferenceCompat extends DialogPreference {
         setDialogLayoutResource(R.layout.dialog_color_picker);
         setWidgetLayoutResource(R.layout.color_preference_widget);
 
+        mPersistentWithoutStore = isPersistent();
+        setColorStore(Spectrum.getDefaultColorStore());
+
+    }
+
+    @Override
+    protected void onAttachedToHierarchy(PreferenceManager preferenceManager) {
+        super.onAttachedToHierarchy(preferenceManager);
+        if (mColorStore != null) {
+            readColorFromStore();
+        }
+    }
+
+    private void readColorFromStore() {
+        // A buffered write is newer than what's stored
+        mCurrentValue = PreferenceWriteBuffer.getColor(mColorStore, getKey(),
+                mColorStore.getColor(getKey(), mCurrentValue));
     }
 
     @Override
     public void onAttached() {
         super.onAttached();
-        getSharedPreferences().registerOnSharedPreferenceChangeListener(mListener);
+        if (mColorStore == null) {
+            PreferenceChangeDispatcher.register(getSharedPreferences(), getKey(), mListener);
+        } else {
+            mColorStore.registerOnColorChangedListener(mStoreListener);
+        }
     }
 
     @Override
-    protected void onPrepareForRemoval() {
-        super.onPrepareForRemoval();
-        getSharedPreferences().unregisterOnSharedPreferenceChangeListener(mListener);
+    public void onDetached() {
+        super.onDetached();
+        PreferenceChangeDispatcher.unregister(getSharedPreferences(), getKey(), mListener);
+        if (mColorStore != null) {
+            mColorStore.unregisterOnColorChangedListener(mStoreListener);
+        }
     }
 
     @Override
@@ -111,7 +174,8 @@ public class SpectrumPreferenceCompat extends DialogPreference {
      * @param colors The colors
      */
     public void setColors(@ColorInt int[] colors) {
-        mColors = colors;
+        mPalette = colors != null ? CompiledPalette.compile(colors) : null;
+        mPaletteKey = null;
     }
 
     /**
@@ -119,7 +183,31 @@ public class SpectrumPreferenceCompat extends DialogPreference {
      * @see #setColors(int[])
      */
     public void setColors(@ArrayRes int colorsResId) {
-        mColors = getContext().getResources().getIntArray(colorsResId);
+        mPalette = PaletteRegistry.getResourcePalette(getContext(), colorsResId);
+        mPaletteKey = null;
+    }
+
+    /**
+     * Sets the colors that will be shown in the color selection dialog. The palette is used as
+     * is, so a palette compiled once can be shared with other preferences and dialogs.
+     *
+     * @param palette The compiled colors
+     */
+    public void setColors(CompiledPalette palette) {
+        mPalette = palette;
+        mPaletteKey = null;
+    }
+
+    /**
+     * Sets the colors that will be shown in the color selection dialog to the palette registered
+     * under the given key with {@link PaletteRegistry}. The palette is looked up when it's first
+     * needed.
+     *
+     * @param key The key the palette is registered under
+     */
+    public void setPalette(String key) {
+        mPalette = null;
+        mPaletteKey = key;
     }
 
     /**
@@ -128,7 +216,18 @@ public class SpectrumPreferenceCompat extends DialogPreference {
      * @return Array of colors
      */
     public @ColorInt int[] getColors() {
-        return mColors;
+        CompiledPalette palette = getPalette();
+        return palette != null ? palette.getColors() : null;
+    }
+
+    /**
+     * @return The compiled colors that will be shown in the color selection dialog
+     */
+    public CompiledPalette getPalette() {
+        if (mPalette == null && mPaletteKey != null) {
+            mPalette = PaletteRegistry.get(getContext(), mPaletteKey);
+        }
+        return mPalette;
     }
 
     /**
@@ -155,15 +254,26 @@ public class SpectrumPreferenceCompat extends DialogPreference {
         if (mColorView == null) {
             return;
         }
-        ColorCircleDrawable drawable = new ColorCircleDrawable(mCurrentValue);
-        drawable.setOutlineWidth(mOutlineWidth);
-        if (!isEnabled()) {
+        if (mColorDrawable == null) {
+            mColorDrawable = new ColorCircleDrawable(mCurrentValue);
+            // Rows are redrawn far more often than the color changes
+            mColorDrawable.setRenderCacheEnabled(true);
+        }
+        ColorCircleDrawable drawable = mColorDrawable;
+        if (isEnabled()) {
+            // Also resets the alpha and outline color in case the preference was disabled
+            drawable.setColor(mCurrentValue);
+            drawable.setOutlineWidth(mOutlineWidth);
+        } else {
             // Show just a gray circle outline
-            drawable.setColor(Color.WHITE);
-            drawable.setAlpha(0);
-            drawable.setOutlineWidth(getContext().getResources().getDimensionPixelSize(R.dimen.color_preference_disabled_outline_size));
-            drawable.setOutlineColor(Color.BLACK);
-            drawable.setOutlineAlpha(ALPHA_DISABLED);
+            if (mDisabledOutlineWidth == -1) {
+                mDisabledOutlineWidth = getContext().getResources().getDimensionPixelSize(R.dimen.color_preference_disabled_outline_size);
+            }
+            // Only changes the drawable, and drops its render cache, if it wasn't disabled already
+            drawable.setOutlineOnly(mDisabledOutlineWidth, ALPHA_DISABLED);
+        }
+        if (mColorView.getBackground() == drawable) {
+            return;
         }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
             mColorView.setBackground(drawable);
@@ -175,9 +285,17 @@ public class SpectrumPreferenceCompat extends DialogPreference {
 
     @Override
     protected void onSetInitialValue(boolean restorePersistedValue, Object defaultValue) {
-        if (restorePersistedValue) {
+        if (mColorStore != null) {
+            // Preferences with a store aren't persistent, so this is only called with a default
+            // value; the stored color, if any, is read once the preference is attached. The
+            // store decides whether the default is needed, since it may not have loaded yet.
+            mCurrentValue = (Integer) defaultValue;
+            mColorStore.putColorIfAbsent(getKey(), mCurrentValue);
+        } else if (restorePersistedValue) {
             // Restore existing state
-            mCurrentValue = this.getPersistedInt(DEFAULT_VALUE);
+            // A buffered write is newer than what's persisted
+            mCurrentValue = PreferenceWriteBuffer.getInt(getSharedPreferences(), getKey(),
+                    this.getPersistedInt(DEFAULT_VALUE));
         } else {
             // Set default state from the XML attribute
             mCurrentValue = (Integer) defaultValue;
@@ -196,14 +314,79 @@ public class SpectrumPreferenceCompat extends DialogPreference {
         if (changed || !mValueSet) {
             mCurrentValue = value;
             mValueSet = true;
-            persistInt(value);
-            updateColorView();
-            if (changed) {
-                notifyChanged();
+            if (mWriteBehind || PreferenceWriteBuffer.isBatching()) {
+                if (mColorStore != null) {
+                    PreferenceWriteBuffer.putColor(mColorStore, getKey(), value);
+                } else if (shouldPersist()) {
+                    PreferenceWriteBuffer.putInt(getSharedPreferences(), getKey(), value);
+                }
+                updateColorView();
+                if (changed) {
+                    PreferenceWriteBuffer.notifyAfterFlush(mNotifyChanged);
+                }
+            } else {
+                if (mColorStore != null) {
+                    mColorStore.putColor(getKey(), value);
+                } else {
+                    persistInt(value);
+                }
+                updateColorView();
+                if (changed) {
+                    notifyChanged();
+                }
             }
         }
     }
 
+    /**
+     * Makes this preference read and write its color through the given store instead of its
+     * {@link android.content.SharedPreferences}. Should be called before the preference is added
+     * to a hierarchy, since that's when the color is read. Preferences use the store set with
+     * {@link Spectrum#setDefaultColorStore(ColorStore)} unless this is called.
+     *
+     * @param store the store to use, or null to go back to the preference's SharedPreferences
+     */
+    public void setColorStore(ColorStore store) {
+        if (mColorStore != null) {
+            mColorStore.unregisterOnColorChangedListener(mStoreListener);
+        }
+        mColorStore = store;
+        // Keeps the framework from reading the preference's SharedPreferences when it's attached
+        setPersistent(store == null && mPersistentWithoutStore);
+    }
+
+    /**
+     * @see #setColorStore(ColorStore)
+     * @return the store this preference reads and writes its color through, or null if it uses
+     * its SharedPreferences
+     */
+    public ColorStore getColorStore() {
+        return mColorStore;
+    }
+
+    /**
+     * By default, every call to {@link #setColor(int)} persists the color and notifies listeners
+     * right away. With write-behind enabled, the color is shown and returned by
+     * {@link #getColor()} immediately, but it's persisted along with any other buffered color
+     * writes in a single {@link android.content.SharedPreferences.Editor#apply()} on the next
+     * turn of the main looper, and listeners are notified once at that point. Colors set between
+     * {@link Spectrum#beginPreferenceBatch()} and {@link Spectrum#endPreferenceBatch()} are always
+     * buffered this way.
+     *
+     * @param writeBehind if color writes should be buffered
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        mWriteBehind = writeBehind;
+    }
+
+    /**
+     * @see #setWriteBehind(boolean)
+     * @return true if color writes are buffered
+     */
+    public boolean getWriteBehind() {
+        return mWriteBehind;
+    }
+
     public int getOutlineWidth() {
         return mOutlineWidth;
     }
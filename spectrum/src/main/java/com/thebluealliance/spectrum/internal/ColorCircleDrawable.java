@@ -1,5 +1,7 @@
 package com.thebluealliance.spectrum.internal;
 
+import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
@@ -10,33 +12,42 @@ import android.graphics.drawable.Drawable;
 import android.support.annotation.ColorInt;
 
 public class ColorCircleDrawable extends Drawable {
-    private final Paint mPaint;
+    private ColorCircleState mState;
     private int mRadius = 0;
-    private int mOutlineWidth = 0;
-    private final Paint mOutlinePaint;
+    private boolean mMutated = false;
 
     public ColorCircleDrawable(final @ColorInt int color) {
-        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mPaint.setColor(color);
-        mOutlinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mOutlinePaint.setColor(ColorUtil.isColorDark(color) ? Color.WHITE : Color.BLACK);
-        mOutlinePaint.setStyle(Paint.Style.STROKE);
+        this(new ColorCircleState(color));
+    }
+
+    private ColorCircleDrawable(ColorCircleState state) {
+        mState = state;
     }
 
     public void setColor(@ColorInt int color) {
-        mPaint.setColor(color);
-        mOutlinePaint.setColor(ColorUtil.isColorDark(color) ? Color.WHITE : Color.BLACK);
-        invalidateSelf();
+        @ColorInt int outlineColor = ColorUtil.isColorDark(color) ? Color.WHITE : Color.BLACK;
+        if (color == mState.mPaint.getColor() && outlineColor == mState.mOutlinePaint.getColor()) {
+            return;
+        }
+        mState.mPaint.setColor(color);
+        mState.mOutlinePaint.setColor(outlineColor);
+        onStateChanged();
     }
 
     public void setOutlineColor(@ColorInt int color) {
-        mOutlinePaint.setColor(color);
-        invalidateSelf();
+        if (color == mState.mOutlinePaint.getColor()) {
+            return;
+        }
+        mState.mOutlinePaint.setColor(color);
+        onStateChanged();
     }
 
     public void setOutlineAlpha(int alpha) {
-        mOutlinePaint.setAlpha(alpha);
-        invalidateSelf();
+        if (alpha == mState.mOutlinePaint.getAlpha()) {
+            return;
+        }
+        mState.mOutlinePaint.setAlpha(alpha);
+        onStateChanged();
     }
 
     /**
@@ -48,19 +59,82 @@ public class ColorCircleDrawable extends Drawable {
         if (width < 0) {
             width = 0;
         }
-        mOutlineWidth = width;
-        mOutlinePaint.setStrokeWidth(mOutlineWidth);
+        if (width == mState.mOutlineWidth) {
+            return;
+        }
+        mState.mOutlineWidth = width;
+        mState.mOutlinePaint.setStrokeWidth(width);
+        onStateChanged();
+    }
+
+    /**
+     * Shows only a black outline of the given width and alpha around a transparent fill, as for a
+     * disabled preference. Does nothing, and keeps the render cache, if the drawable already looks
+     * like that; {@link #setColor(int)} goes back to showing a color.
+     *
+     * @param width in px
+     */
+    public void setOutlineOnly(int width, int alpha) {
+        if (width < 0) {
+            width = 0;
+        }
+        @ColorInt int outlineColor = Color.argb(alpha, 0, 0, 0);
+        if (mState.mPaint.getColor() == Color.TRANSPARENT && mState.mOutlinePaint.getColor() == outlineColor
+                && width == mState.mOutlineWidth) {
+            return;
+        }
+        mState.mPaint.setColor(Color.TRANSPARENT);
+        mState.mOutlinePaint.setColor(outlineColor);
+        mState.mOutlineWidth = width;
+        mState.mOutlinePaint.setStrokeWidth(width);
+        onStateChanged();
+    }
+
+    /**
+     * When enabled, the circle is rendered into a bitmap the size of this drawable's bounds the
+     * first time it's drawn, and that bitmap is drawn from then on until the color, outline or
+     * size change. Useful for drawables that are drawn over and over again without changing,
+     * such as in preference rows; drawables that share a constant state share the bitmap.
+     */
+    public void setRenderCacheEnabled(boolean enabled) {
+        mState.mRenderCacheEnabled = enabled;
+        if (!enabled) {
+            mState.mRenderCache = null;
+        }
+    }
+
+    private void onStateChanged() {
+        mState.mRenderCache = null;
         invalidateSelf();
     }
 
     @Override
     public void draw(final Canvas canvas) {
         final Rect bounds = getBounds();
-        if (mOutlineWidth != 0) {
-            canvas.drawCircle(bounds.centerX(), bounds.centerY(), mRadius - mOutlineWidth, mPaint);
-            canvas.drawCircle(bounds.centerX(), bounds.centerY(), mRadius - mOutlineWidth, mOutlinePaint);
+        if (!mState.mRenderCacheEnabled) {
+            drawCircle(canvas, bounds.centerX(), bounds.centerY());
+            return;
+        }
+
+        Bitmap cache = mState.mRenderCache;
+        if (cache == null || cache.getWidth() != bounds.width() || cache.getHeight() != bounds.height()) {
+            if (bounds.isEmpty()) {
+                return;
+            }
+            cache = Bitmap.createBitmap(bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+            drawCircle(new Canvas(cache), bounds.width() / 2, bounds.height() / 2);
+            mState.mRenderCache = cache;
+        }
+        canvas.drawBitmap(cache, bounds.left, bounds.top, null);
+    }
+
+    private void drawCircle(Canvas canvas, int centerX, int centerY) {
+        int outlineWidth = mState.mOutlineWidth;
+        if (outlineWidth != 0) {
+            canvas.drawCircle(centerX, centerY, mRadius - outlineWidth, mState.mPaint);
+            canvas.drawCircle(centerX, centerY, mRadius - outlineWidth, mState.mOutlinePaint);
         } else {
-            canvas.drawCircle(bounds.centerX(), bounds.centerY(), mRadius, mPaint);
+            canvas.drawCircle(centerX, centerY, mRadius, mState.mPaint);
         }
     }
 
@@ -70,19 +144,92 @@ public class ColorCircleDrawable extends Drawable {
         mRadius = Math.min(bounds.width(), bounds.height()) / 2;
     }
 
+    /**
+     * Sets the alpha of the fill; the outline is unaffected. Reset by {@link #setColor(int)}.
+     */
     @Override
     public void setAlpha(final int alpha) {
-        mPaint.setAlpha(alpha);
+        if (alpha == mState.mPaint.getAlpha()) {
+            return;
+        }
+        mState.mPaint.setAlpha(alpha);
+        onStateChanged();
+    }
+
+    @Override
+    public int getAlpha() {
+        return mState.mPaint.getAlpha();
     }
 
     @Override
     public void setColorFilter(final ColorFilter cf) {
-        mPaint.setColorFilter(cf);
+        mState.mPaint.setColorFilter(cf);
+        onStateChanged();
     }
 
+    /**
+     * A circle never covers the corners of its bounds, so this drawable is never
+     * {@link PixelFormat#OPAQUE}; it's {@link PixelFormat#TRANSPARENT} when neither the fill nor
+     * the outline would draw anything.
+     */
     @Override
     public int getOpacity() {
-        return PixelFormat.TRANSLUCENT;
+        boolean fillVisible = mState.mPaint.getAlpha() != 0;
+        boolean outlineVisible = mState.mOutlineWidth != 0 && mState.mOutlinePaint.getAlpha() != 0;
+        return fillVisible || outlineVisible ? PixelFormat.TRANSLUCENT : PixelFormat.TRANSPARENT;
     }
-}
 
+    @Override
+    public Drawable mutate() {
+        if (!mMutated && super.mutate() == this) {
+            mState = new ColorCircleState(mState);
+            mMutated = true;
+        }
+        return this;
+    }
+
+    @Override
+    public ConstantState getConstantState() {
+        return mState;
+    }
+
+    private static final class ColorCircleState extends ConstantState {
+        final Paint mPaint;
+        final Paint mOutlinePaint;
+        int mOutlineWidth = 0;
+        boolean mRenderCacheEnabled = false;
+        Bitmap mRenderCache;
+
+        ColorCircleState(@ColorInt int color) {
+            mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mPaint.setColor(color);
+            mOutlinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mOutlinePaint.setColor(ColorUtil.isColorDark(color) ? Color.WHITE : Color.BLACK);
+            mOutlinePaint.setStyle(Paint.Style.STROKE);
+        }
+
+        ColorCircleState(ColorCircleState other) {
+            mPaint = new Paint(other.mPaint);
+            mOutlinePaint = new Paint(other.mOutlinePaint);
+            mOutlineWidth = other.mOutlineWidth;
+            mRenderCacheEnabled = other.mRenderCacheEnabled;
+            // Bitmaps are never modified once rendered, so the copy can keep using it
+            mRenderCache = other.mRenderCache;
+        }
+
+        @Override
+        public Drawable newDrawable() {
+            return new ColorCircleDrawable(this);
+        }
+
+        @Override
+        public Drawable newDrawable(Resources res) {
+            return new ColorCircleDrawable(this);
+        }
+
+        @Override
+        public int getChangingConfigurations() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.thebluealliance.spectrum.internal;
+
+import com.thebluealliance.spectrum.R;
+
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.support.v4.widget.ExploreByTouchHelper;
+import android.view.View;
+import android.view.accessibility.AccessibilityEvent;
+
+import java.util.List;
+
+/**
+ * Exposes each color drawn by a {@link ColorGridRenderer} to accessibility services as a
+ * checkable, clickable virtual view, so that colors can be explored and selected with TalkBack
+ * in canvas mode just like the items of the other modes.
+ */
+public class ColorGridAccessibilityHelper extends ExploreByTouchHelper {
+
+    private final View mHost;
+    private final ColorGridRenderer mRenderer;
+    private final ColorItem.OnColorClickListener mListener;
+    private final Rect mBounds = new Rect();
+
+    public ColorGridAccessibilityHelper(View host, ColorGridRenderer renderer,
+                                        ColorItem.OnColorClickListener listener) {
+        super(host);
+        mHost = host;
+        mRenderer = renderer;
+        mListener = listener;
+    }
+
+    @Override
+    protected int getVirtualViewAt(float x, float y) {
+        int index = mRenderer.getIndexAt(x, y);
+        return index != -1 ? index : INVALID_ID;
+    }
+
+    @Override
+    protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+        if (mHost.getLocalVisibleRect(mBounds)) {
+            mRenderer.getVisibleIndices(mBounds, virtualViewIds);
+        }
+    }
+
+    @Override
+    protected void onPopulateEventForVirtualView(int virtualViewId, AccessibilityEvent event) {
+        event.setContentDescription(getDescription(virtualViewId));
+        event.setChecked(isValid(virtualViewId) && mRenderer.isSelected(virtualViewId));
+    }
+
+    @Override
+    protected void onPopulateNodeForVirtualView(int virtualViewId, AccessibilityNodeInfoCompat node) {
+        // Bounds must always be set; items that no longer exist get empty ones
+        if (isValid(virtualViewId)) {
+            mRenderer.getItemBounds(virtualViewId, mBounds);
+        } else {
+            mBounds.setEmpty();
+        }
+        node.setBoundsInParent(mBounds);
+        node.setContentDescription(getDescription(virtualViewId));
+        node.setCheckable(true);
+        node.setChecked(isValid(virtualViewId) && mRenderer.isSelected(virtualViewId));
+        node.setClickable(true);
+        node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+    }
+
+    @Override
+    protected boolean onPerformActionForVirtualView(int virtualViewId, int action, Bundle arguments) {
+        if (action != AccessibilityNodeInfoCompat.ACTION_CLICK || !isValid(virtualViewId)) {
+            return false;
+        }
+        mListener.onColorClicked(mRenderer.getColor(virtualViewId));
+        sendEventForVirtualView(virtualViewId, AccessibilityEvent.TYPE_VIEW_CLICKED);
+        return true;
+    }
+
+    private boolean isValid(int index) {
+        return index >= 0 && index < mRenderer.getColorCount();
+    }
+
+    private String getDescription(int index) {
+        if (!isValid(index)) {
+            return "";
+        }
+        String hex = String.format("#%06X", 0xFFFFFF & mRenderer.getColor(index));
+        return mHost.getResources().getString(R.string.color_item_description, hex);
+    }
+}
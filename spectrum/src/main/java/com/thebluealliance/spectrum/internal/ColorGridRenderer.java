@@ -0,0 +1,216 @@
+package com.thebluealliance.spectrum.internal;
+
+import com.thebluealliance.spectrum.CompiledPalette;
+import com.thebluealliance.spectrum.R;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.ColorInt;
+import android.support.v4.content.ContextCompat;
+
+import java.util.List;
+
+/**
+ * Draws a palette's swatches, outlines and checkmark directly onto a canvas. Used by
+ * {@link com.thebluealliance.spectrum.SpectrumPalette} in canvas mode so that the whole palette
+ * is a single view. Items are laid out on the same grid as the view-based modes: each cell is
+ * {@code itemDimension + 2 * itemMargin} pixels square, and touches are mapped back to color
+ * indices with grid arithmetic.
+ */
+public class ColorGridRenderer {
+
+    private static final int PRESSED_ALPHA = 80;
+
+    private final int mColorItemDimension;
+    private final int mColorItemMargin;
+    private final int mCheckmarkMargin;
+    private final int mCellSize;
+
+    private final Paint mFillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mOutlinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mPressedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Drawable mCheckmark;
+    private final ColorFilter mLightCheckmarkFilter = new PorterDuffColorFilter(Color.WHITE, PorterDuff.Mode.SRC_ATOP);
+    private final ColorFilter mDarkCheckmarkFilter = new PorterDuffColorFilter(Color.BLACK, PorterDuff.Mode.SRC_ATOP);
+    private final Rect mClipBounds = new Rect();
+    private final Rect mItemBounds = new Rect();
+
+    private CompiledPalette mPalette;
+    private @ColorInt int mSelectedColor;
+    private int mNumColumns = 1;
+    private int mOutlineWidth = 0;
+    private int mPressedIndex = -1;
+    private int mGridLeft = 0;
+    private int mGridTop = 0;
+
+    public ColorGridRenderer(Context context, int colorItemDimension, int colorItemMargin) {
+        mColorItemDimension = colorItemDimension;
+        mColorItemMargin = colorItemMargin;
+        mCheckmarkMargin = context.getResources().getDimensionPixelSize(R.dimen.color_item_selected_check_margins);
+        mCellSize = colorItemDimension + 2 * colorItemMargin;
+
+        mOutlinePaint.setStyle(Paint.Style.STROKE);
+        mCheckmark = ContextCompat.getDrawable(context, R.drawable.ic_check_white_24dp).mutate();
+    }
+
+    public void setPalette(CompiledPalette palette, int numColumns) {
+        mPalette = palette;
+        mNumColumns = numColumns;
+        mPressedIndex = -1;
+    }
+
+    public void setSelectedColor(@ColorInt int color) {
+        mSelectedColor = color;
+    }
+
+    public void setOutlineWidth(int width) {
+        mOutlineWidth = width;
+        mOutlinePaint.setStrokeWidth(width);
+    }
+
+    public void setPressedIndex(int index) {
+        mPressedIndex = index;
+    }
+
+    public int getPressedIndex() {
+        return mPressedIndex;
+    }
+
+    /**
+     * @return how many colors are drawn
+     */
+    public int getColorCount() {
+        return mPalette != null ? mPalette.size() : 0;
+    }
+
+    public @ColorInt int getColor(int index) {
+        return mPalette.getColor(index);
+    }
+
+    /**
+     * @return true if the item at the given index shows the checkmark
+     */
+    public boolean isSelected(int index) {
+        return mPalette.getColor(index) == mSelectedColor;
+    }
+
+    /**
+     * Sets where the top-left corner of the grid is, in the coordinates of the hosting view.
+     */
+    public void setGridOrigin(int left, int top) {
+        mGridLeft = left;
+        mGridTop = top;
+    }
+
+    /**
+     * @return the index of the color drawn at the given point, or -1 if there isn't one
+     */
+    public int getIndexAt(float x, float y) {
+        if (mPalette == null || x < mGridLeft || y < mGridTop) {
+            return -1;
+        }
+        int column = (int) (x - mGridLeft) / mCellSize;
+        int row = (int) (y - mGridTop) / mCellSize;
+        if (column >= mNumColumns) {
+            return -1;
+        }
+
+        // Touches in the margins between items don't count
+        int offsetX = (int) (x - mGridLeft) - column * mCellSize - mColorItemMargin;
+        int offsetY = (int) (y - mGridTop) - row * mCellSize - mColorItemMargin;
+        if (offsetX < 0 || offsetX >= mColorItemDimension || offsetY < 0 || offsetY >= mColorItemDimension) {
+            return -1;
+        }
+
+        int index = row * mNumColumns + column;
+        return index < mPalette.size() ? index : -1;
+    }
+
+    /**
+     * Computes the area occupied by the item at the given index, in the coordinates of the
+     * hosting view.
+     */
+    public void getItemBounds(int index, Rect outBounds) {
+        int left = mGridLeft + (index % mNumColumns) * mCellSize + mColorItemMargin;
+        int top = mGridTop + (index / mNumColumns) * mCellSize + mColorItemMargin;
+        outBounds.set(left, top, left + mColorItemDimension, top + mColorItemDimension);
+    }
+
+    /**
+     * Adds the indices of the items in the rows that intersect {@code visibleBounds}, which is in
+     * the coordinates of the hosting view.
+     */
+    public void getVisibleIndices(Rect visibleBounds, List<Integer> outIndices) {
+        int count = getColorCount();
+        if (count == 0) {
+            return;
+        }
+        int rowCount = (count + mNumColumns - 1) / mNumColumns;
+        int firstRow = Math.max(0, (visibleBounds.top - mGridTop) / mCellSize);
+        int lastRow = Math.min(rowCount - 1, (visibleBounds.bottom - mGridTop) / mCellSize);
+        for (int row = firstRow; row <= lastRow; row++) {
+            int end = Math.min(count, (row + 1) * mNumColumns);
+            for (int index = row * mNumColumns; index < end; index++) {
+                outIndices.add(index);
+            }
+        }
+    }
+
+    public void draw(Canvas canvas) {
+        if (mPalette == null || mPalette.size() == 0) {
+            return;
+        }
+
+        // Only visit the rows that intersect the area being redrawn
+        canvas.getClipBounds(mClipBounds);
+        int rowCount = (mPalette.size() + mNumColumns - 1) / mNumColumns;
+        int firstRow = Math.max(0, (mClipBounds.top - mGridTop) / mCellSize);
+        int lastRow = Math.min(rowCount - 1, (mClipBounds.bottom - mGridTop) / mCellSize);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            int end = Math.min(mPalette.size(), (row + 1) * mNumColumns);
+            for (int index = row * mNumColumns; index < end; index++) {
+                drawItem(canvas, index);
+            }
+        }
+    }
+
+    private void drawItem(Canvas canvas, int index) {
+        @ColorInt int color = mPalette.getColor(index);
+        boolean isDark = mPalette.isDark(index);
+        getItemBounds(index, mItemBounds);
+
+        float centerX = mItemBounds.exactCenterX();
+        float centerY = mItemBounds.exactCenterY();
+        float radius = mColorItemDimension / 2f;
+
+        // Like GradientDrawable, the outline is centered on the edge of an inset fill
+        float fillRadius = radius - mOutlineWidth / 2f;
+        mFillPaint.setColor(color);
+        canvas.drawCircle(centerX, centerY, fillRadius, mFillPaint);
+        if (mOutlineWidth != 0) {
+            mOutlinePaint.setColor(isDark ? Color.WHITE : Color.BLACK);
+            canvas.drawCircle(centerX, centerY, fillRadius, mOutlinePaint);
+        }
+
+        if (index == mPressedIndex) {
+            mPressedPaint.setColor(mPalette.getRippleColor(index));
+            mPressedPaint.setAlpha(PRESSED_ALPHA);
+            canvas.drawCircle(centerX, centerY, radius, mPressedPaint);
+        }
+
+        if (color == mSelectedColor) {
+            mItemBounds.inset(mCheckmarkMargin, mCheckmarkMargin);
+            mCheckmark.setBounds(mItemBounds);
+            mCheckmark.setColorFilter(isDark ? mLightCheckmarkFilter : mDarkCheckmarkFilter);
+            mCheckmark.draw(canvas);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.thebluealliance.spectrum.internal;
+
+import android.support.annotation.ColorInt;
+
+import java.util.Arrays;
+
+/**
+ * Maps colors to their positions in a palette in constant time. A palette may contain the same
+ * color more than once, so every position also links to the next position holding the same color.
+ * <p/>
+ * Indexes can be extended with {@link #append(int[], int)} in time proportional to the number of
+ * added colors: the extended index shares its tables with this one, and only hashes the new
+ * positions. Each index only reports positions below its own {@link #size()}, so this one is
+ * unaffected. The colors array is shared the same way; positions below {@link #size()} must not be
+ * modified afterwards.
+ */
+public final class ColorIndex {
+
+    private static final int NO_INDEX = -1;
+
+    /**
+     * How far the shared tables have been filled, and so whether an index may append to them in
+     * place; guarded by itself
+     */
+    private static final class Tables {
+        int mFilled;
+    }
+
+    private final @ColorInt int[] mColors;
+    private final int mSize;
+    private final int mUniqueCount;
+    private final Tables mTables;
+
+    /**
+     * Open-addressing hash table, keyed by color, holding the first position of each color
+     */
+    private final int[] mTable;
+    /**
+     * For each slot of {@link #mTable}, the last position of its color, so that positions can be
+     * added to the end of its chain
+     */
+    private final int[] mLastIndex;
+    private final int mMask;
+
+    /**
+     * For each position, the next position that holds the same color
+     */
+    private final int[] mNextIndex;
+
+    /**
+     * Indexes all of {@code colors}.
+     */
+    public ColorIndex(@ColorInt int[] colors) {
+        this(colors, colors.length);
+    }
+
+    /**
+     * Indexes the first {@code size} positions of {@code colors}, with room to append the rest
+     * in place.
+     */
+    private ColorIndex(@ColorInt int[] colors, int size) {
+        mColors = colors;
+        mTables = new Tables();
+        mTable = newTable(colors.length);
+        mLastIndex = newTable(colors.length);
+        mMask = mTable.length - 1;
+        mNextIndex = newNextIndex(colors.length);
+        mSize = size;
+        mUniqueCount = insert(0, size);
+    }
+
+    private ColorIndex(@ColorInt int[] colors, Tables tables, int[] table, int[] lastIndex, int[] nextIndex,
+                       int size, int uniqueCount) {
+        mColors = colors;
+        mTables = tables;
+        mTable = table;
+        mLastIndex = lastIndex;
+        mMask = table.length - 1;
+        mNextIndex = nextIndex;
+        mSize = size;
+        mUniqueCount = uniqueCount;
+    }
+
+    /**
+     * @return an empty table for {@code capacity} positions, kept at most half full so that probe
+     * sequences stay short
+     */
+    private static int[] newTable(int capacity) {
+        int[] table = new int[Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1];
+        Arrays.fill(table, NO_INDEX);
+        return table;
+    }
+
+    private static int[] newNextIndex(int capacity) {
+        int[] nextIndex = new int[capacity];
+        Arrays.fill(nextIndex, NO_INDEX);
+        return nextIndex;
+    }
+
+    /**
+     * Returns an index of this index's positions followed by positions {@link #size()} to
+     * {@code newSize - 1} of {@code colors}, which must hold this index's colors first. Passing
+     * the same array as this index's, with room for the new positions, extends the shared tables
+     * in place unless another index has already been appended to this one; otherwise, such as when
+     * the caller grew the array, new tables sized for all of {@code colors} are built.
+     */
+    public ColorIndex append(@ColorInt int[] colors, int newSize) {
+        synchronized (mTables) {
+            if (colors == mColors && mTables.mFilled == mSize) {
+                ColorIndex index = new ColorIndex(colors, mTables, mTable, mLastIndex, mNextIndex, newSize,
+                        mUniqueCount + insert(mSize, newSize));
+                mTables.mFilled = newSize;
+                return index;
+            }
+        }
+        return new ColorIndex(colors, newSize);
+    }
+
+    /**
+     * Adds positions {@code from} to {@code to - 1} to the tables, in ascending order so that each
+     * chain stays in ascending order and the table keeps the first position of every color.
+     *
+     * @return how many of the added colors weren't in the tables yet
+     */
+    private int insert(int from, int to) {
+        int added = 0;
+        for (int i = from; i < to; i++) {
+            int slot = findSlot(mColors[i]);
+            if (mTable[slot] == NO_INDEX) {
+                mTable[slot] = i;
+                added++;
+            } else {
+                mNextIndex[mLastIndex[slot]] = i;
+            }
+            mLastIndex[slot] = i;
+        }
+        mTables.mFilled = Math.max(mTables.mFilled, to);
+        return added;
+    }
+
+    private int findSlot(@ColorInt int color) {
+        int slot = hash(color) & mMask;
+        while (mTable[slot] != NO_INDEX && mColors[mTable[slot]] != color) {
+            slot = (slot + 1) & mMask;
+        }
+        return slot;
+    }
+
+    private static int hash(int color) {
+        int h = color * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the first position of the given color, or -1 if it isn't in the palette
+     */
+    public int indexOf(@ColorInt int color) {
+        int index = mTable[findSlot(color)];
+        // Positions past this index's size belong to indexes appended to it
+        return index < mSize ? index : NO_INDEX;
+    }
+
+    /**
+     * @return the next position after {@code index} that holds the same color, or -1 if there
+     * isn't one
+     */
+    public int nextIndexOf(int index) {
+        int next = mNextIndex[index];
+        return next < mSize ? next : NO_INDEX;
+    }
+
+    /**
+     * @return true if the palette contains the given color
+     */
+    public boolean contains(@ColorInt int color) {
+        return indexOf(color) != NO_INDEX;
+    }
+
+    /**
+     * @return the number of distinct colors in the palette
+     */
+    public int getUniqueCount() {
+        return mUniqueCount;
+    }
+
+    /**
+     * @return the number of positions in the palette, including duplicates
+     */
+    public int size() {
+        return mSize;
+    }
+}
@@ -2,45 +2,42 @@ package com.thebluealliance.spectrum.internal;
 
 import com.thebluealliance.spectrum.R;
 
-import org.greenrobot.eventbus.EventBus;
-import org.greenrobot.eventbus.Subscribe;
-
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
 import android.content.Context;
-import android.content.res.ColorStateList;
-import android.graphics.Color;
-import android.graphics.drawable.ColorDrawable;
+import android.graphics.Canvas;
 import android.graphics.drawable.Drawable;
-import android.graphics.drawable.GradientDrawable;
-import android.graphics.drawable.RippleDrawable;
-import android.graphics.drawable.StateListDrawable;
-import android.os.Build;
 import android.support.annotation.ColorInt;
 import android.util.AttributeSet;
-import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.FrameLayout;
-import android.widget.ImageView;
 
 public class ColorItem extends FrameLayout implements View.OnClickListener {
 
     /**
-     * {@link EventBus} used internally for inter-component communication
+     * Receives clicks on color items. Items don't listen for selection changes; the palette
+     * checks and unchecks them directly.
      */
-    private EventBus mEventBus;
+    public interface OnColorClickListener {
+        void onColorClicked(@ColorInt int color);
+    }
+
+    private OnColorClickListener mListener;
 
-    private ImageView mItemCheckmark;
+    /**
+     * Shared with every other item of the same darkness; only fetched once this item is checked
+     */
+    private Drawable mCheckmark;
+    private int mCheckmarkMargin;
+    private float mCheckmarkProgress = 0.0f;
     private @ColorInt int mColor;
     private boolean mIsSelected = false;
     private int mOutlineWidth = 0;
 
-    public ColorItem(Context context, @ColorInt int color, boolean isSelected, EventBus eventBus) {
+    public ColorItem(Context context, @ColorInt int color, boolean isSelected, OnColorClickListener listener) {
         super(context);
 
         mColor = color;
         mIsSelected = isSelected;
-        mEventBus = eventBus;
+        mListener = listener;
 
         init();
         setChecked(mIsSelected);
@@ -57,23 +54,21 @@ public class ColorItem extends FrameLayout implements View.OnClickListener {
     }
 
     private void updateDrawables() {
-        setForeground(createForegroundDrawable());
+        setForeground(SwatchDrawableCache.getForeground(getContext(), mColor));
+        Drawable background = SwatchDrawableCache.getBackground(getContext(), mColor, mOutlineWidth);
         if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.JELLY_BEAN) {
-            setBackgroundDrawable(createBackgroundDrawable());
+            setBackgroundDrawable(background);
         } else {
-            setBackground(createBackgroundDrawable());
+            setBackground(background);
         }
     }
 
     private void init() {
         updateDrawables();
 
-        mEventBus.register(this);
         setOnClickListener(this);
 
-        LayoutInflater.from(getContext()).inflate(R.layout.color_item, this, true);
-        mItemCheckmark = (ImageView) findViewById(R.id.selected_checkmark);
-        mItemCheckmark.setColorFilter(ColorUtil.isColorDark(mColor) ? Color.WHITE : Color.BLACK);
+        mCheckmarkMargin = getResources().getDimensionPixelSize(R.dimen.color_item_selected_check_margins);
     }
 
     /**
@@ -82,116 +77,99 @@ public class ColorItem extends FrameLayout implements View.OnClickListener {
      * @param width in px
      */
     public void setOutlineWidth(int width) {
+        if (width == mOutlineWidth) {
+            return;
+        }
         mOutlineWidth = width;
         updateDrawables();
     }
 
-    public void setChecked(boolean checked) {
-        boolean oldChecked = mIsSelected;
-        mIsSelected = checked;
-
-        if (!oldChecked && mIsSelected) {
-            // Animate checkmark appearance
-
-            setItemCheckmarkAttributes(0.0f);
-            mItemCheckmark.setVisibility(View.VISIBLE);
-
-            mItemCheckmark.animate()
-                    .alpha(1.0f)
-                    .scaleX(1.0f)
-                    .scaleY(1.0f)
-                    .setDuration(250)
-                    .setListener(new AnimatorListenerAdapter() {
-
-                        @Override
-                        public void onAnimationEnd(Animator animation) {
-                            setItemCheckmarkAttributes(1.0f);
-                        }
-                    }).start();
-        } else if (oldChecked && !mIsSelected) {
-            // Animate checkmark disappearance
-
-            mItemCheckmark.setVisibility(View.VISIBLE);
-            setItemCheckmarkAttributes(1.0f);
-
-            mItemCheckmark.animate()
-                    .alpha(0.0f)
-                    .scaleX(0.0f)
-                    .scaleY(0.0f)
-                    .setDuration(250)
-                    .setListener(new AnimatorListenerAdapter() {
-
-                        @Override
-                        public void onAnimationEnd(Animator animation) {
-                            mItemCheckmark.setVisibility(View.INVISIBLE);
-                            setItemCheckmarkAttributes(0.0f);
-                        }
-                    }).start();
-        } else {
-            // Just sync the view's visibility
-            updateCheckmarkVisibility();
+    /**
+     * Rebinds this item to display a different color. Used when items are recycled, so the
+     * checkmark is synced immediately instead of being animated.
+     *
+     * @param color      the color this item should display
+     * @param isSelected whether this item should show the checkmark
+     */
+    public void bind(@ColorInt int color, boolean isSelected) {
+        if (color != mColor) {
+            mColor = color;
+            updateDrawables();
+            // The new color may need a checkmark of the other tint
+            mCheckmark = null;
         }
+        mIsSelected = isSelected;
+        updateCheckmarkVisibility();
     }
 
-    private void updateCheckmarkVisibility() {
-        mItemCheckmark.setVisibility(mIsSelected ? View.VISIBLE : View.INVISIBLE);
-        setItemCheckmarkAttributes(1.0f);
+    public @ColorInt int getColor() {
+        return mColor;
     }
 
     /**
-     * Convenience method for simultaneously setting the alpha, X scale, and Y scale of a view
-     *
-     * @param value the value to be set
+     * Sets the listener that clicks are reported to, or stops reporting clicks if
+     * {@code listener} is null.
      */
-    private void setItemCheckmarkAttributes(float value) {
-        mItemCheckmark.setAlpha(value);
-        mItemCheckmark.setScaleX(value);
-        mItemCheckmark.setScaleY(value);
+    public void setOnColorClickListener(OnColorClickListener listener) {
+        mListener = listener;
     }
 
-    @Subscribe
-    public void onSelectedColorChanged(SelectedColorChangedEvent event) {
-        setChecked(event.getSelectedColor() == mColor);
+    /**
+     * Checks or unchecks this item immediately. Animated selection changes are driven by the
+     * palette's {@link SelectionAnimator}.
+     */
+    public void setChecked(boolean checked) {
+        mIsSelected = checked;
+        updateCheckmarkVisibility();
     }
 
-    @Override
-    public void onClick(View v) {
-        mEventBus.post(new SelectedColorChangedEvent(mColor));
+    public boolean isChecked() {
+        return mIsSelected;
     }
 
-    private Drawable createBackgroundDrawable() {
-        GradientDrawable mask = new GradientDrawable();
-        mask.setShape(GradientDrawable.OVAL);
-        if (mOutlineWidth != 0) {
-            mask.setStroke(mOutlineWidth, ColorUtil.isColorDark(mColor) ? Color.WHITE : Color.BLACK);
+    /**
+     * Shows the checkmark partially faded in and scaled up, regardless of whether this item is
+     * checked. Used by {@link SelectionAnimator}.
+     *
+     * @param progress 0 to hide the checkmark, 1 to show it fully
+     */
+    void setCheckmarkProgress(float progress) {
+        if (progress == mCheckmarkProgress) {
+            return;
         }
-        mask.setColor(mColor);
-        return mask;
+        mCheckmarkProgress = progress;
+        invalidate();
     }
 
-    private Drawable createForegroundDrawable() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            // Use a ripple drawable
-            GradientDrawable mask = new GradientDrawable();
-            mask.setShape(GradientDrawable.OVAL);
-            mask.setColor(Color.BLACK);
-
-            return new RippleDrawable(ColorStateList.valueOf(ColorUtil.getRippleColor(mColor)), null, mask);
-        } else {
-            // Use a translucent foreground
-            StateListDrawable foreground = new StateListDrawable();
-            foreground.setAlpha(80);
-            foreground.setEnterFadeDuration(250);
-            foreground.setExitFadeDuration(250);
+    private void updateCheckmarkVisibility() {
+        setCheckmarkProgress(mIsSelected ? 1.0f : 0.0f);
+    }
 
-            GradientDrawable mask = new GradientDrawable();
-            mask.setShape(GradientDrawable.OVAL);
-            mask.setColor(ColorUtil.getRippleColor(mColor));
-            foreground.addState(new int[]{android.R.attr.state_pressed}, mask);
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
 
-            foreground.addState(new int[]{}, new ColorDrawable(Color.TRANSPARENT));
+        // Drawn after the background and before the foreground, so touch feedback covers it
+        if (mCheckmarkProgress <= 0.0f) {
+            return;
+        }
+        if (mCheckmark == null) {
+            mCheckmark = SwatchDrawableCache.getCheckmark(getContext(), ColorUtil.isColorDark(mColor));
+        }
+        int width = getWidth();
+        int height = getHeight();
+        mCheckmark.setBounds(mCheckmarkMargin, mCheckmarkMargin, width - mCheckmarkMargin, height - mCheckmarkMargin);
+        mCheckmark.setAlpha((int) (255 * mCheckmarkProgress));
+        int saveCount = canvas.save();
+        canvas.scale(mCheckmarkProgress, mCheckmarkProgress, width / 2.0f, height / 2.0f);
+        mCheckmark.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
 
-            return foreground;
+    @Override
+    public void onClick(View v) {
+        if (mListener != null) {
+            mListener.onColorClicked(mColor);
         }
     }
 }
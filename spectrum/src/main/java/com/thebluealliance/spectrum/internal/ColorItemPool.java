@@ -0,0 +1,111 @@
+package com.thebluealliance.spectrum.internal;
+
+import com.thebluealliance.spectrum.SpectrumMetrics;
+
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.support.annotation.ColorInt;
+import android.support.v4.os.TraceCompat;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/**
+ * Process-wide, bounded pool of {@link ColorItem}s shared by every palette, so that palettes
+ * shown side by side or one after the other (such as a dialog that's opened repeatedly) can reuse
+ * each other's items instead of creating new ones.
+ * <p/>
+ * Items are created with a {@link MutableContextWrapper} that's pointed at the context of the
+ * palette currently using them, and at the application context while they sit in the pool, so
+ * pooled items never keep an activity alive. This class must only be used from the main thread.
+ */
+public final class ColorItemPool {
+
+    private static final int MAX_POOL_SIZE = 256;
+
+    private static final ArrayList<ColorItem> sPool = new ArrayList<>();
+
+    private ColorItemPool() {
+        // Util class
+    }
+
+    /**
+     * Returns a pooled item bound to the given color, or a new one if the pool is empty.
+     */
+    public static ColorItem obtain(Context context, ColorItem.OnColorClickListener listener, @ColorInt int color,
+                                   boolean isSelected, int outlineWidth) {
+        int size = sPool.size();
+        if (size == 0) {
+            return createItem(context, listener, color, isSelected, outlineWidth);
+        }
+
+        ColorItem item = sPool.remove(size - 1);
+        ((MutableContextWrapper) item.getContext()).setBaseContext(context);
+        item.setOnColorClickListener(listener);
+        item.setOutlineWidth(outlineWidth);
+        item.bind(color, isSelected);
+        return item;
+    }
+
+    /**
+     * @return how many more items the pool can hold
+     */
+    public static int getFreeCapacity() {
+        return MAX_POOL_SIZE - sPool.size();
+    }
+
+    /**
+     * Detaches the given item from its parent and its palette's listener, and keeps it for
+     * reuse if the pool isn't full. The item must not be used by the caller afterwards.
+     */
+    public static void release(ColorItem item) {
+        ViewGroup parent = (ViewGroup) item.getParent();
+        if (parent != null) {
+            parent.removeView(item);
+        }
+        item.setOnColorClickListener(null);
+
+        if (sPool.size() < MAX_POOL_SIZE && item.getContext() instanceof MutableContextWrapper) {
+            MutableContextWrapper context = (MutableContextWrapper) item.getContext();
+            context.setBaseContext(context.getApplicationContext());
+            sPool.add(item);
+        }
+    }
+
+    /**
+     * Creates a new item for the given color and adds it to the pool, so that a palette shown
+     * later doesn't have to create it.
+     *
+     * @return false if the pool is already full, in which case no item is created
+     */
+    public static boolean prewarm(Context context, @ColorInt int color, int outlineWidth) {
+        if (sPool.size() >= MAX_POOL_SIZE) {
+            return false;
+        }
+        sPool.add(createItem(context.getApplicationContext(), null, color, false, outlineWidth));
+        return true;
+    }
+
+    private static ColorItem createItem(Context context, ColorItem.OnColorClickListener listener, @ColorInt int color,
+                                        boolean isSelected, int outlineWidth) {
+        SpectrumMetrics metrics = Instrumentation.getMetrics();
+        long start = metrics != null ? System.nanoTime() : 0;
+        TraceCompat.beginSection("Spectrum:createColorItem");
+
+        ColorItem item = new ColorItem(new MutableContextWrapper(context), color, isSelected, listener);
+        item.setOutlineWidth(outlineWidth);
+
+        TraceCompat.endSection();
+        if (metrics != null) {
+            metrics.onColorItemCreated(System.nanoTime() - start);
+        }
+        return item;
+    }
+
+    /**
+     * Drops every pooled item.
+     */
+    public static void clear() {
+        sPool.clear();
+    }
+}
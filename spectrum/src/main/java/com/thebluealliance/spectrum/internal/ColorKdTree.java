@@ -0,0 +1,188 @@
+package com.thebluealliance.spectrum.internal;
+
+import android.support.annotation.ColorInt;
+
+/**
+ * A k-d tree over the colors of a palette in CIELAB space, for finding the palette color that
+ * looks closest to an arbitrary color in logarithmic time on average. Built once per palette; only
+ * the first position of each color is indexed.
+ * <p/>
+ * The tree is implicit: the points of each subtree occupy a contiguous range of the arrays, with
+ * the splitting point at the middle of the range, points before it on the lower side and points
+ * after it on the upper side.
+ */
+public final class ColorKdTree {
+
+    private static final int DIMENSIONS = 3;
+
+    /**
+     * Lab coordinates of each point, three floats per point
+     */
+    private final float[] mPoints;
+    /**
+     * Palette position of each point
+     */
+    private final int[] mIndices;
+    /**
+     * Axis that each point splits its subtree on
+     */
+    private final byte[] mAxes;
+    private final int mSize;
+
+    // Scratch state for queries, which are synchronized
+    private final float[] mQuery = new float[DIMENSIONS];
+    private float mBestDistance;
+    private int mBestPoint;
+
+    /**
+     * @param colors the palette's colors; only the first {@code index.size()} are used
+     */
+    public ColorKdTree(@ColorInt int[] colors, ColorIndex index) {
+        int size = index.getUniqueCount();
+        mPoints = new float[size * DIMENSIONS];
+        mIndices = new int[size];
+        mAxes = new byte[size];
+        mSize = size;
+
+        float[] lab = new float[DIMENSIONS];
+        int point = 0;
+        for (int i = 0; i < index.size(); i++) {
+            if (index.indexOf(colors[i]) != i) {
+                // Duplicates would only ever tie with their first position
+                continue;
+            }
+            ColorUtil.colorToLab(colors[i], lab);
+            System.arraycopy(lab, 0, mPoints, point * DIMENSIONS, DIMENSIONS);
+            mIndices[point] = i;
+            point++;
+        }
+
+        build(0, size);
+    }
+
+    private void build(int from, int to) {
+        if (to - from <= 0) {
+            return;
+        }
+        int axis = widestAxis(from, to);
+        int middle = (from + to) >>> 1;
+        select(from, to - 1, middle, axis);
+        mAxes[middle] = (byte) axis;
+        build(from, middle);
+        build(middle + 1, to);
+    }
+
+    /**
+     * @return the axis along which the points in the given range are spread out the most
+     */
+    private int widestAxis(int from, int to) {
+        int widestAxis = 0;
+        float widestSpread = -1;
+        for (int axis = 0; axis < DIMENSIONS; axis++) {
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            for (int i = from; i < to; i++) {
+                float value = mPoints[i * DIMENSIONS + axis];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > widestSpread) {
+                widestSpread = max - min;
+                widestAxis = axis;
+            }
+        }
+        return widestAxis;
+    }
+
+    /**
+     * Rearranges the points between {@code left} and {@code right}, inclusive, so that the point at
+     * {@code k} is the one that would be there if they were sorted along {@code axis}, with no
+     * greater point before it and no smaller point after it.
+     */
+    private void select(int left, int right, int k, int axis) {
+        while (left < right) {
+            float pivot = mPoints[((left + right) >>> 1) * DIMENSIONS + axis];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (mPoints[i * DIMENSIONS + axis] < pivot) {
+                    i++;
+                }
+                while (mPoints[j * DIMENSIONS + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        for (int d = 0; d < DIMENSIONS; d++) {
+            float point = mPoints[a * DIMENSIONS + d];
+            mPoints[a * DIMENSIONS + d] = mPoints[b * DIMENSIONS + d];
+            mPoints[b * DIMENSIONS + d] = point;
+        }
+        int index = mIndices[a];
+        mIndices[a] = mIndices[b];
+        mIndices[b] = index;
+    }
+
+    /**
+     * @return the palette position of the color that's closest to {@code color} in CIELAB space,
+     * or -1 if the palette is empty. Ties go to the earliest position.
+     */
+    public synchronized int nearestIndex(@ColorInt int color) {
+        if (mSize == 0) {
+            return -1;
+        }
+        ColorUtil.colorToLab(color, mQuery);
+        mBestDistance = Float.MAX_VALUE;
+        mBestPoint = -1;
+        search(0, mSize);
+        return mIndices[mBestPoint];
+    }
+
+    private void search(int from, int to) {
+        if (to - from <= 0) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+
+        float distance = 0;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            float delta = mQuery[d] - mPoints[middle * DIMENSIONS + d];
+            distance += delta * delta;
+        }
+        if (distance < mBestDistance
+                || (distance == mBestDistance && mIndices[middle] < mIndices[mBestPoint])) {
+            mBestDistance = distance;
+            mBestPoint = middle;
+        }
+
+        int axis = mAxes[middle];
+        float delta = mQuery[axis] - mPoints[middle * DIMENSIONS + axis];
+        // Search the side the query is on first, and the other side only if it could be closer
+        if (delta < 0) {
+            search(from, middle);
+            if (delta * delta <= mBestDistance) {
+                search(middle + 1, to);
+            }
+        } else {
+            search(middle + 1, to);
+            if (delta * delta <= mBestDistance) {
+                search(from, middle);
+            }
+        }
+    }
+}
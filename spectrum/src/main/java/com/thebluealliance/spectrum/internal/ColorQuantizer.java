@@ -0,0 +1,217 @@
+package com.thebluealliance.spectrum.internal;
+
+import android.support.annotation.ColorInt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reduces the colors of an image to a small number of representative colors with the median cut
+ * algorithm. Pixels are first counted into a histogram with 5 bits per channel; histograms of
+ * different parts of an image can be built separately, on different threads, and added together.
+ * Pure Java, so that it can be benchmarked off-device.
+ */
+public final class ColorQuantizer {
+
+    /**
+     * Number of histogram bins: 5 bits for each of red, green and blue
+     */
+    public static final int HISTOGRAM_SIZE = 1 << 15;
+
+    /**
+     * Pixels more transparent than this are left out of the histogram
+     */
+    private static final int MIN_ALPHA = 0x80;
+
+    /**
+     * How many pixels are counted between checks for interruption
+     */
+    private static final int INTERRUPT_CHECK_INTERVAL = 4096;
+
+    private static final int RED = 0;
+    private static final int GREEN = 1;
+    private static final int BLUE = 2;
+
+    private ColorQuantizer() {
+        // Util class
+    }
+
+    /**
+     * Adds every {@code step}th pixel from {@code from} (inclusive) to {@code to} (exclusive) to
+     * {@code histogram}. Stops early, leaving the histogram incomplete, if the current thread is
+     * interrupted.
+     *
+     * @param pixels    ARGB pixels
+     * @param histogram an array of {@link #HISTOGRAM_SIZE} counts
+     * @return false if the current thread was interrupted
+     */
+    public static boolean addToHistogram(@ColorInt int[] pixels, int from, int to, int step, int[] histogram) {
+        int untilCheck = INTERRUPT_CHECK_INTERVAL;
+        for (int i = from; i < to; i += step) {
+            int pixel = pixels[i];
+            if ((pixel >>> 24) >= MIN_ALPHA) {
+                histogram[((pixel >> 9) & 0x7C00) | ((pixel >> 6) & 0x03E0) | ((pixel >> 3) & 0x001F)]++;
+            }
+            if (--untilCheck == 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                untilCheck = INTERRUPT_CHECK_INTERVAL;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits the colors counted in {@code histogram} into at most {@code maxColors} boxes, always
+     * splitting the most populous box at the median of its longest side, and returns the average
+     * color of each box, most populous first.
+     */
+    public static @ColorInt int[] medianCut(int[] histogram, int maxColors) {
+        int distinctColors = 0;
+        for (int count : histogram) {
+            if (count > 0) {
+                distinctColors++;
+            }
+        }
+        int[] bins = new int[distinctColors];
+        int next = 0;
+        for (int bin = 0; bin < HISTOGRAM_SIZE; bin++) {
+            if (histogram[bin] > 0) {
+                bins[next++] = bin;
+            }
+        }
+
+        ArrayList<Box> boxes = new ArrayList<>();
+        if (distinctColors > 0) {
+            boxes.add(new Box(bins, histogram, 0, distinctColors));
+        }
+        while (boxes.size() < maxColors) {
+            Box largest = null;
+            for (Box box : boxes) {
+                if (box.canSplit() && (largest == null || box.mPopulation > largest.mPopulation)) {
+                    largest = box;
+                }
+            }
+            if (largest == null) {
+                // Every box holds a single color
+                break;
+            }
+            boxes.add(largest.split(bins, histogram));
+        }
+
+        // Most populous first
+        long[] sortable = new long[boxes.size()];
+        for (int i = 0; i < boxes.size(); i++) {
+            Box box = boxes.get(i);
+            sortable[i] = ((long) -box.mPopulation << 32) | (box.averageColor(bins, histogram) & 0xFFFFFFFFL);
+        }
+        Arrays.sort(sortable);
+        int[] colors = new int[sortable.length];
+        for (int i = 0; i < sortable.length; i++) {
+            colors[i] = (int) sortable[i];
+        }
+        return colors;
+    }
+
+    private static int component(int bin, int channel) {
+        return (bin >> (10 - 5 * channel)) & 0x1F;
+    }
+
+    /**
+     * Expands a 5-bit channel value to 8 bits
+     */
+    private static int expand(int value) {
+        return (value << 3) | (value >> 2);
+    }
+
+    /**
+     * A range of {@code bins}, covering part of the color space
+     */
+    private static final class Box {
+        private int mFrom;
+        private int mTo;
+        private long mPopulation;
+        private final int[] mMin = new int[3];
+        private final int[] mMax = new int[3];
+
+        Box(int[] bins, int[] histogram, int from, int to) {
+            mFrom = from;
+            mTo = to;
+            shrink(bins, histogram);
+        }
+
+        private void shrink(int[] bins, int[] histogram) {
+            Arrays.fill(mMin, Integer.MAX_VALUE);
+            Arrays.fill(mMax, Integer.MIN_VALUE);
+            mPopulation = 0;
+            for (int i = mFrom; i < mTo; i++) {
+                for (int channel = RED; channel <= BLUE; channel++) {
+                    int value = component(bins[i], channel);
+                    mMin[channel] = Math.min(mMin[channel], value);
+                    mMax[channel] = Math.max(mMax[channel], value);
+                }
+                mPopulation += histogram[bins[i]];
+            }
+        }
+
+        boolean canSplit() {
+            return mTo - mFrom > 1;
+        }
+
+        /**
+         * Moves the upper half of this box, by population, into a new box.
+         */
+        Box split(int[] bins, int[] histogram) {
+            int channel = RED;
+            for (int c = GREEN; c <= BLUE; c++) {
+                if (mMax[c] - mMin[c] > mMax[channel] - mMin[channel]) {
+                    channel = c;
+                }
+            }
+
+            // Sort along the longest side by temporarily putting that side's value above each bin
+            for (int i = mFrom; i < mTo; i++) {
+                bins[i] |= component(bins[i], channel) << 15;
+            }
+            Arrays.sort(bins, mFrom, mTo);
+            for (int i = mFrom; i < mTo; i++) {
+                bins[i] &= HISTOGRAM_SIZE - 1;
+            }
+
+            // Both halves keep at least one bin
+            long half = mPopulation / 2;
+            long count = 0;
+            int splitAt = mFrom + 1;
+            for (int i = mFrom; i < mTo - 1; i++) {
+                count += histogram[bins[i]];
+                splitAt = i + 1;
+                if (count >= half) {
+                    break;
+                }
+            }
+
+            Box upper = new Box(bins, histogram, splitAt, mTo);
+            mTo = splitAt;
+            shrink(bins, histogram);
+            return upper;
+        }
+
+        @ColorInt
+        int averageColor(int[] bins, int[] histogram) {
+            long red = 0;
+            long green = 0;
+            long blue = 0;
+            for (int i = mFrom; i < mTo; i++) {
+                int count = histogram[bins[i]];
+                red += (long) count * expand(component(bins[i], RED));
+                green += (long) count * expand(component(bins[i], GREEN));
+                blue += (long) count * expand(component(bins[i], BLUE));
+            }
+            return 0xFF000000
+                    | (int) ((red + mPopulation / 2) / mPopulation) << 16
+                    | (int) ((green + mPopulation / 2) / mPopulation) << 8
+                    | (int) ((blue + mPopulation / 2) / mPopulation);
+        }
+    }
+}
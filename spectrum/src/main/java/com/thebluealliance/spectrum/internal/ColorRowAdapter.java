@@ -0,0 +1,153 @@
+package com.thebluealliance.spectrum.internal;
+
+import com.thebluealliance.spectrum.CompiledPalette;
+
+import android.content.Context;
+import android.support.annotation.ColorInt;
+import android.support.v7.widget.RecyclerView;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+
+/**
+ * Presents a palette's colors as rows of {@link ColorItem}s. Used by
+ * {@link com.thebluealliance.spectrum.SpectrumPalette} in virtualized mode so that only the rows
+ * currently on screen exist as views; rows that scroll off screen are rebound to new colors.
+ * <p/>
+ * Rows take their items from {@link ColorItemPool} when they're first bound, but never return
+ * them: recycled rows keep their items so that rebinding them doesn't touch the pool, and the
+ * items are collected along with the RecyclerView's row pool. Only standard mode returns items.
+ */
+public class ColorRowAdapter extends RecyclerView.Adapter<ColorRowAdapter.RowViewHolder> {
+
+    private final ColorItem.OnColorClickListener mListener;
+    private final SelectionAnimator mSelectionAnimator;
+    private final int mColorItemDimension;
+    private final int mColorItemMargin;
+
+    private CompiledPalette mPalette;
+    private @ColorInt int mSelectedColor;
+    private int mNumColumns = 1;
+    private int mOutlineWidth = 0;
+
+    public ColorRowAdapter(ColorItem.OnColorClickListener listener, SelectionAnimator selectionAnimator,
+                           int colorItemDimension, int colorItemMargin) {
+        mListener = listener;
+        mSelectionAnimator = selectionAnimator;
+        mColorItemDimension = colorItemDimension;
+        mColorItemMargin = colorItemMargin;
+    }
+
+    public void setColors(CompiledPalette palette, int numColumns) {
+        mPalette = palette;
+        mNumColumns = numColumns;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Updates the adapter for colors that were added to the end of the palette. Rows that were
+     * already full aren't rebound; only the last row, if it had room left, and the new rows are.
+     *
+     * @param palette the palette, which starts with the colors the adapter already has
+     */
+    public void appendColors(CompiledPalette palette) {
+        int oldColorCount = mPalette != null ? mPalette.size() : 0;
+        int oldRowCount = getItemCount();
+        mPalette = palette;
+        if (mNumColumns <= 0) {
+            notifyDataSetChanged();
+            return;
+        }
+        if (oldColorCount % mNumColumns != 0) {
+            notifyItemChanged(oldRowCount - 1);
+        }
+        notifyItemRangeInserted(oldRowCount, getItemCount() - oldRowCount);
+    }
+
+    /**
+     * Only affects rows bound from now on; use {@link #findItem(RecyclerView, int)} to update
+     * items that are currently on screen.
+     */
+    public void setSelectedColor(@ColorInt int color) {
+        mSelectedColor = color;
+    }
+
+    /**
+     * @return the item for the color at the given index, or null if its row isn't currently bound
+     */
+    public ColorItem findItem(RecyclerView recyclerView, int index) {
+        RowViewHolder holder = (RowViewHolder) recyclerView.findViewHolderForAdapterPosition(index / mNumColumns);
+        return holder != null ? (ColorItem) holder.mRow.getChildAt(index % mNumColumns) : null;
+    }
+
+    public void setOutlineWidth(int width) {
+        if (width == mOutlineWidth) {
+            return;
+        }
+        mOutlineWidth = width;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getItemCount() {
+        if (mPalette == null || mNumColumns <= 0) {
+            return 0;
+        }
+        return (mPalette.size() + mNumColumns - 1) / mNumColumns;
+    }
+
+    @Override
+    public RowViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        LinearLayout row = new LinearLayout(parent.getContext());
+        row.setOrientation(LinearLayout.HORIZONTAL);
+        row.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        row.setGravity(Gravity.CENTER_HORIZONTAL);
+        return new RowViewHolder(row);
+    }
+
+    @Override
+    public void onBindViewHolder(RowViewHolder holder, int position) {
+        LinearLayout row = holder.mRow;
+
+        // Rows keep any items they've created; extra ones are hidden if the column count shrinks
+        while (row.getChildCount() < mNumColumns) {
+            row.addView(createColorItem(row.getContext(), mPalette.getColor(0)));
+        }
+
+        for (int column = 0; column < row.getChildCount(); column++) {
+            ColorItem item = (ColorItem) row.getChildAt(column);
+            mSelectionAnimator.remove(item);
+            int index = position * mNumColumns + column;
+            if (column >= mNumColumns) {
+                item.setVisibility(View.GONE);
+            } else if (index >= mPalette.size()) {
+                // Acts as a spacer so that the last row lines up with the rest of the grid
+                item.setVisibility(View.INVISIBLE);
+            } else {
+                item.setVisibility(View.VISIBLE);
+                item.setOutlineWidth(mOutlineWidth);
+                item.bind(mPalette.getColor(index), mPalette.getColor(index) == mSelectedColor);
+            }
+        }
+    }
+
+    private ColorItem createColorItem(Context context, @ColorInt int color) {
+        ColorItem view = ColorItemPool.obtain(context, mListener, color, false, mOutlineWidth);
+        LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(mColorItemDimension, mColorItemDimension);
+        params.setMargins(mColorItemMargin, mColorItemMargin, mColorItemMargin, mColorItemMargin);
+        view.setLayoutParams(params);
+        return view;
+    }
+
+    public static class RowViewHolder extends RecyclerView.ViewHolder {
+
+        final LinearLayout mRow;
+
+        RowViewHolder(LinearLayout row) {
+            super(row);
+            mRow = row;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.thebluealliance.spectrum.internal;
+
+import com.thebluealliance.spectrum.ColorSource;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+
+/**
+ * Loads the pages of a {@link ColorSource} one after another and hands each one to a
+ * {@link Listener} on the main thread. Pages that arrive after the loader has been cancelled are
+ * dropped, so a palette can switch sources without seeing colors from the old one. This class
+ * must only be used from the main thread.
+ */
+public final class ColorSourceLoader {
+
+    public interface Listener {
+        void onColorsLoaded(@ColorInt int[] colors);
+    }
+
+    private final ColorSource mSource;
+    private final int mPageSize;
+    private final Listener mListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final int mCount;
+    private int mLoadedCount = 0;
+    private boolean mLoading = false;
+    private boolean mEndReached = false;
+    private boolean mCancelled = false;
+
+    public ColorSourceLoader(ColorSource source, int pageSize, Listener listener) {
+        mSource = source;
+        mPageSize = pageSize;
+        mListener = listener;
+        mCount = source.getCount();
+        mEndReached = mCount == 0;
+    }
+
+    /**
+     * Starts loading the next page, unless one is already loading or every color has been loaded.
+     */
+    public void loadNextPage() {
+        if (mLoading || mEndReached || mCancelled) {
+            return;
+        }
+        mLoading = true;
+        int pageSize = mPageSize;
+        if (mCount != ColorSource.COUNT_UNKNOWN) {
+            pageSize = Math.min(pageSize, mCount - mLoadedCount);
+        }
+        mSource.loadPage(mLoadedCount, pageSize, new ColorSource.PageCallback() {
+            private boolean mCalled = false;
+
+            @Override
+            public void onPageLoaded(@NonNull final int[] colors, final boolean endReached) {
+                if (Looper.myLooper() == Looper.getMainLooper()) {
+                    deliver(colors, endReached);
+                } else {
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            deliver(colors, endReached);
+                        }
+                    });
+                }
+            }
+
+            private void deliver(int[] colors, boolean endReached) {
+                if (mCalled) {
+                    throw new IllegalStateException("onPageLoaded() called more than once");
+                }
+                mCalled = true;
+                onPageDelivered(colors, endReached);
+            }
+        });
+    }
+
+    private void onPageDelivered(@ColorInt int[] colors, boolean endReached) {
+        if (mCancelled) {
+            return;
+        }
+        mLoading = false;
+        mLoadedCount += colors.length;
+        // An empty page can't move the offset forward, so it also ends the source
+        mEndReached = endReached || colors.length == 0
+                || (mCount != ColorSource.COUNT_UNKNOWN && mLoadedCount >= mCount);
+        if (colors.length > 0) {
+            mListener.onColorsLoaded(colors);
+        }
+    }
+
+    /**
+     * @return true while a page is being loaded
+     */
+    public boolean isLoading() {
+        return mLoading;
+    }
+
+    /**
+     * @return true once every color has been loaded
+     */
+    public boolean isEndReached() {
+        return mEndReached;
+    }
+
+    /**
+     * Drops the page being loaded, if any, and stops loading pages.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+}
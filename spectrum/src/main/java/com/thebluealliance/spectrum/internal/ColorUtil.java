@@ -1,12 +1,38 @@
 package com.thebluealliance.spectrum.internal;
 
-import android.graphics.Color;
 import android.support.annotation.ColorInt;
 
 /**
  * General-purpose class tor color functions
+ * <p/>
+ * Everything here uses integer arithmetic and never allocates, since these functions are called
+ * several times for every color in a palette.
  */
 public final class ColorUtil {
+
+    /**
+     * Brightness threshold below which a color is "dark", scaled by 1000 to match the integer
+     * channel weights used by {@link #isColorDark(int)}
+     */
+    private static final int DARK_THRESHOLD = 160 * 1000;
+
+    /**
+     * Linear-light value of each 8-bit sRGB channel value
+     */
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double c = i / 255.0;
+            SRGB_TO_LINEAR[i] = (float) (c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4));
+        }
+    }
+
+    // D65 reference white
+    private static final float WHITE_X = 0.95047f;
+    private static final float WHITE_Y = 1.0f;
+    private static final float WHITE_Z = 1.08883f;
+
     private ColorUtil() {
         //Util class
     }
@@ -20,17 +46,75 @@ public final class ColorUtil {
      * @return true if the color is "dark"
      */
     public static boolean isColorDark(@ColorInt int color) {
-        double brightness = Color.red(color) * 0.299 +
-                Color.green(color) * 0.587 +
-                Color.blue(color) * 0.114;
-        return brightness < 160;
+        int red = (color >> 16) & 0xFF;
+        int green = (color >> 8) & 0xFF;
+        int blue = color & 0xFF;
+        int brightness = red * 299 + green * 587 + blue * 114;
+        if (brightness != DARK_THRESHOLD) {
+            return brightness < DARK_THRESHOLD;
+        }
+        // Colors exactly on the threshold used to be decided by floating-point rounding error; keep
+        // deciding them the same way so that no color changes from dark to light or vice versa
+        return red * 0.299 + green * 0.587 + blue * 0.114 < 160;
     }
 
+    /**
+     * Computes the color used for touch feedback on top of the given color. This is the color
+     * with its HSV value halved, which is the same as halving each of its channels; the result is
+     * always opaque. Channels may differ by 1 from a round trip through
+     * {@link android.graphics.Color#colorToHSV(int, float[])} due to that method's floating-point
+     * rounding.
+     */
     @ColorInt public static int getRippleColor(@ColorInt int color) {
-        float[] hsv = new float[3];
-        Color.colorToHSV(color, hsv);
-        hsv[2] = hsv[2] * 0.5f;
-        return Color.HSVToColor(hsv);
+        // Halve each channel, rounding half up, without letting bits carry between channels
+        return 0xFF000000 | (((color & 0xFEFEFE) >>> 1) + (color & 0x010101));
+    }
+
+    /**
+     * Converts a color to CIELAB (D65), where the euclidean distance between two colors roughly
+     * matches how different they look. Alpha is ignored. Unlike the other functions here, this
+     * one uses floating-point arithmetic, but it still doesn't allocate.
+     *
+     * @param outLab receives L*, a* and b*, in that order
+     */
+    public static void colorToLab(@ColorInt int color, float[] outLab) {
+        float r = SRGB_TO_LINEAR[(color >> 16) & 0xFF];
+        float g = SRGB_TO_LINEAR[(color >> 8) & 0xFF];
+        float b = SRGB_TO_LINEAR[color & 0xFF];
+
+        float fx = labF((0.4124f * r + 0.3576f * g + 0.1805f * b) / WHITE_X);
+        float fy = labF((0.2126f * r + 0.7152f * g + 0.0722f * b) / WHITE_Y);
+        float fz = labF((0.0193f * r + 0.1192f * g + 0.9505f * b) / WHITE_Z);
+
+        outLab[0] = 116.0f * fy - 16.0f;
+        outLab[1] = 500.0f * (fx - fy);
+        outLab[2] = 200.0f * (fy - fz);
+    }
+
+    private static float labF(float t) {
+        return t > 216.0f / 24389.0f ? (float) Math.cbrt(t) : (24389.0f / 27.0f * t + 16.0f) / 116.0f;
+    }
+
+    /**
+     * Computes {@link #isColorDark(int)} for every color in {@code colors}.
+     *
+     * @param outIsDark receives the results; must be at least as long as {@code colors}
+     */
+    public static void isColorDark(@ColorInt int[] colors, boolean[] outIsDark) {
+        for (int i = 0; i < colors.length; i++) {
+            outIsDark[i] = isColorDark(colors[i]);
+        }
+    }
+
+    /**
+     * Computes {@link #getRippleColor(int)} for every color in {@code colors}.
+     *
+     * @param outRippleColors receives the results; must be at least as long as {@code colors}
+     */
+    public static void getRippleColors(@ColorInt int[] colors, @ColorInt int[] outRippleColors) {
+        for (int i = 0; i < colors.length; i++) {
+            outRippleColors[i] = getRippleColor(colors[i]);
+        }
     }
 
 }
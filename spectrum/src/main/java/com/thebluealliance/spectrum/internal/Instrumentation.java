@@ -0,0 +1,63 @@
+package com.thebluealliance.spectrum.internal;
+
+import com.thebluealliance.spectrum.SpectrumMetrics;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Holds the installed {@link SpectrumMetrics}. Hot paths read it once, and only take timestamps and
+ * make callbacks if it isn't null:
+ * <pre>
+ * SpectrumMetrics metrics = Instrumentation.getMetrics();
+ * long start = metrics != null ? System.nanoTime() : 0;
+ * ...
+ * if (metrics != null) {
+ *     metrics.onSomething(System.nanoTime() - start);
+ * }
+ * </pre>
+ * Only accessed from the main thread, so the field is a plain static.
+ */
+public final class Instrumentation {
+
+    private static SpectrumMetrics sMetrics;
+
+    private Instrumentation() {
+        // Util class
+    }
+
+    public static SpectrumMetrics getMetrics() {
+        return sMetrics;
+    }
+
+    public static void setMetrics(SpectrumMetrics metrics) {
+        sMetrics = metrics;
+    }
+
+    /**
+     * Reports {@link SpectrumMetrics#onDialogShown(int, int, long)} right before the first frame
+     * that draws {@code view}, which must be part of the dialog. Does nothing if no metrics are
+     * installed.
+     *
+     * @param startNanos when the dialog started being created, from {@link System#nanoTime()}
+     */
+    public static void trackDialogShown(final View view, final int dialog, final int colorCount,
+                                        final long startNanos) {
+        if (sMetrics == null || startNanos == 0) {
+            return;
+        }
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                // Listeners added before the view is attached move to the window's observer, so
+                // remove it from whichever observer the view has now
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                SpectrumMetrics metrics = sMetrics;
+                if (metrics != null) {
+                    metrics.onDialogShown(dialog, colorCount, System.nanoTime() - startNanos);
+                }
+                return true;
+            }
+        });
+    }
+}
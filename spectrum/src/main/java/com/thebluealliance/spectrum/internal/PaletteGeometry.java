@@ -0,0 +1,62 @@
+package com.thebluealliance.spectrum.internal;
+
+/**
+ * Grid arithmetic for laying out a palette: each color occupies a square cell of
+ * {@code itemDimension + 2 * itemMargin} pixels. Pure Java, so that it can be benchmarked
+ * off-device.
+ */
+public final class PaletteGeometry {
+
+    private final int mItemDimension;
+    private final int mItemMargin;
+
+    /**
+     * @param itemDimension the width and height of a color item, in px
+     * @param itemMargin    the margin on each side of a color item, in px
+     */
+    public PaletteGeometry(int itemDimension, int itemMargin) {
+        mItemDimension = itemDimension;
+        mItemMargin = itemMargin;
+    }
+
+    /**
+     * @return the width and height of a cell, in px
+     */
+    public int getCellSize() {
+        return mItemDimension + 2 * mItemMargin;
+    }
+
+    /**
+     * @return how many columns fit in {@code maxWidth} px
+     */
+    public int computeColumnCount(int maxWidth) {
+        int numColumns = 0;
+        while (((numColumns + 1) * mItemDimension) + ((numColumns + 1) * 2 * mItemMargin) <= maxWidth) {
+            numColumns++;
+        }
+        return numColumns;
+    }
+
+    /**
+     * @return the width of {@code columnCount} columns, in px
+     */
+    public int computeWidthForNumColumns(int columnCount) {
+        return columnCount * (mItemDimension + 2 * mItemMargin);
+    }
+
+    /**
+     * @return the height of the rows needed to show {@code colorCount} colors in
+     * {@code columnCount} columns, in px
+     */
+    public int computeHeight(int colorCount, int columnCount) {
+        if (colorCount == 0) {
+            // No colors to display, so we won't take up any room
+            return 0;
+        }
+        int rowCount = colorCount / columnCount;
+        if (colorCount % columnCount != 0) {
+            rowCount++;
+        }
+        return rowCount * (mItemDimension + 2 * mItemMargin);
+    }
+}
@@ -0,0 +1,80 @@
+package com.thebluealliance.spectrum.internal;
+
+import com.thebluealliance.spectrum.CompiledPalette;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+
+/**
+ * Prepares the drawables and {@link ColorItem}s for a palette while the main thread is idle, a
+ * few colors at a time, so that the first palette to show those colors finds them in
+ * {@link SwatchDrawableCache} and {@link ColorItemPool}. Only the first colors that fit in the
+ * drawable cache are prepared, since preparing more would evict the drawables built for earlier
+ * ones. Must be started from the main thread.
+ */
+public final class PaletteWarmer implements MessageQueue.IdleHandler {
+
+    /**
+     * How many colors are prepared each time the main thread goes idle; small enough that a
+     * frame that arrives in the meantime isn't delayed noticeably
+     */
+    private static final int COLORS_PER_IDLE = 16;
+
+    private final Context mContext;
+    private final CompiledPalette mPalette;
+    private final int mOutlineWidth;
+    private int mNextIndex = 0;
+    private int mEnd;
+    private boolean mPoolFull = false;
+
+    private PaletteWarmer(Context context, CompiledPalette palette, int outlineWidth) {
+        mContext = context.getApplicationContext();
+        mPalette = palette;
+        mOutlineWidth = outlineWidth;
+        mEnd = findEnd(palette, SwatchDrawableCache.getColorCapacity());
+    }
+
+    /**
+     * @return the index after the last color to prepare, so that at most {@code maxColors}
+     * distinct colors are prepared
+     */
+    private static int findEnd(CompiledPalette palette, int maxColors) {
+        int distinctColors = 0;
+        for (int i = 0; i < palette.size(); i++) {
+            if (!palette.isDuplicate(i) && ++distinctColors > maxColors) {
+                return i;
+            }
+        }
+        return palette.size();
+    }
+
+    public static void start(Context context, CompiledPalette palette, int outlineWidth) {
+        Looper.myQueue().addIdleHandler(new PaletteWarmer(context, palette, outlineWidth));
+    }
+
+    @Override
+    public boolean queueIdle() {
+        if (mNextIndex == 0) {
+            SwatchDrawableCache.getCheckmark(mContext, true);
+            SwatchDrawableCache.getCheckmark(mContext, false);
+        }
+
+        int end = Math.min(mEnd, mNextIndex + COLORS_PER_IDLE);
+        for (int i = mNextIndex; i < end; i++) {
+            int color = mPalette.getColor(i);
+            if (!mPoolFull) {
+                // Creating an item also caches its drawables
+                mPoolFull = !ColorItemPool.prewarm(mContext, color, mOutlineWidth);
+            }
+            if (mPoolFull && !mPalette.isDuplicate(i)) {
+                SwatchDrawableCache.getBackground(mContext, color, mOutlineWidth);
+                SwatchDrawableCache.getForeground(mContext, color);
+            }
+        }
+        mNextIndex = end;
+
+        // Stay registered until every color has been prepared
+        return mNextIndex < mEnd;
+    }
+}
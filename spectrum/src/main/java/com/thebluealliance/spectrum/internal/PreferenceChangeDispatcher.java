@@ -0,0 +1,116 @@
+package com.thebluealliance.spectrum.internal;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.WeakHashMap;
+
+/**
+ * Listens to a {@link SharedPreferences} file on behalf of every color preference that's stored
+ * in it, and forwards each change only to the preferences registered for the changed key. This
+ * way, a file is listened to once no matter how many color preferences it backs, and a write to
+ * one preference doesn't wake up all the others.
+ * <p/>
+ * Like {@link SharedPreferences} itself, a dispatcher only holds its listeners weakly, so
+ * preferences that are never unregistered, such as those of a settings screen that's closed, can
+ * still be collected along with their activity. A dispatcher registers itself with its file when
+ * its first listener is added, and unregisters itself once it has no listeners left. This class
+ * must only be used from the main thread.
+ */
+public final class PreferenceChangeDispatcher implements SharedPreferences.OnSharedPreferenceChangeListener {
+
+    private static final HashMap<SharedPreferences, PreferenceChangeDispatcher> sDispatchers = new HashMap<>();
+
+    private final SharedPreferences mPreferences;
+    private final HashMap<String, WeakHashMap<SharedPreferences.OnSharedPreferenceChangeListener, Boolean>> mListeners =
+            new HashMap<>();
+
+    private PreferenceChangeDispatcher(SharedPreferences preferences) {
+        mPreferences = preferences;
+    }
+
+    /**
+     * Starts notifying {@code listener} of changes to {@code key}. Registering a listener that's
+     * already registered for the same key has no effect. The listener is only held weakly, so the
+     * caller must keep a reference to it.
+     */
+    public static void register(SharedPreferences preferences, String key,
+                                SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        if (preferences == null || key == null) {
+            return;
+        }
+        PreferenceChangeDispatcher dispatcher = sDispatchers.get(preferences);
+        if (dispatcher == null) {
+            dispatcher = new PreferenceChangeDispatcher(preferences);
+            sDispatchers.put(preferences, dispatcher);
+            preferences.registerOnSharedPreferenceChangeListener(dispatcher);
+        }
+        WeakHashMap<SharedPreferences.OnSharedPreferenceChangeListener, Boolean> listeners = dispatcher.mListeners.get(key);
+        if (listeners == null) {
+            // Almost always a single preference per key
+            listeners = new WeakHashMap<>(1);
+            dispatcher.mListeners.put(key, listeners);
+        }
+        listeners.put(listener, Boolean.TRUE);
+    }
+
+    /**
+     * Stops notifying {@code listener} of changes to {@code key}. Does nothing if it isn't
+     * registered.
+     */
+    public static void unregister(SharedPreferences preferences, String key,
+                                  SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        if (preferences == null || key == null) {
+            return;
+        }
+        PreferenceChangeDispatcher dispatcher = sDispatchers.get(preferences);
+        if (dispatcher == null) {
+            return;
+        }
+        WeakHashMap<SharedPreferences.OnSharedPreferenceChangeListener, Boolean> listeners = dispatcher.mListeners.get(key);
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+        dispatcher.removeIfUnused();
+    }
+
+    /**
+     * Drops the keys whose listeners have all been unregistered or collected, and unregisters
+     * this dispatcher from its file if no keys are left.
+     */
+    private void removeIfUnused() {
+        Iterator<WeakHashMap<SharedPreferences.OnSharedPreferenceChangeListener, Boolean>> iterator =
+                mListeners.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isEmpty()) {
+                iterator.remove();
+            }
+        }
+        if (mListeners.isEmpty()) {
+            sDispatchers.remove(mPreferences);
+            mPreferences.unregisterOnSharedPreferenceChangeListener(this);
+        }
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        WeakHashMap<SharedPreferences.OnSharedPreferenceChangeListener, Boolean> listeners = mListeners.get(key);
+        if (listeners == null) {
+            return;
+        }
+        if (listeners.isEmpty()) {
+            // Every listener for this key was collected
+            removeIfUnused();
+            return;
+        }
+        // Copied so that a listener may unregister itself
+        SharedPreferences.OnSharedPreferenceChangeListener[] snapshot = listeners.keySet().toArray(
+                new SharedPreferences.OnSharedPreferenceChangeListener[listeners.size()]);
+        for (SharedPreferences.OnSharedPreferenceChangeListener listener : snapshot) {
+            if (listener != null) {
+                listener.onSharedPreferenceChanged(mPreferences, key);
+            }
+        }
+    }
+}
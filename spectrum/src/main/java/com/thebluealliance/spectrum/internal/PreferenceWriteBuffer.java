@@ -0,0 +1,178 @@
+package com.thebluealliance.spectrum.internal;
+
+import com.thebluealliance.spectrum.ColorStore;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Buffers color preference writes in memory and flushes them with a single
+ * {@link SharedPreferences.Editor#apply()} per file, or a single
+ * {@link ColorStore#putColors(java.util.Map)} per store for preferences that use a
+ * {@link ColorStore}, along with the change notifications of the
+ * preferences that were written. Writes are flushed on the next turn of the main looper, or, while
+ * a batch is open, when the outermost batch ends.
+ * <p/>
+ * This class must only be used from the main thread.
+ */
+public final class PreferenceWriteBuffer {
+
+    /**
+     * Buffered writes, keyed by the {@link SharedPreferences} or {@link ColorStore} they're for
+     */
+    private static final HashMap<Object, HashMap<String, Integer>> sPendingWrites = new HashMap<>();
+    private static final ArrayList<Runnable> sPendingNotifications = new ArrayList<>();
+    private static final ArrayList<Runnable> sNotificationsToRun = new ArrayList<>();
+
+    private static int sBatchDepth = 0;
+    private static boolean sFlushPosted = false;
+
+    private static Handler sHandler;
+    private static final Runnable sFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sFlushPosted = false;
+            flush();
+        }
+    };
+
+    private PreferenceWriteBuffer() {
+        // Util class
+    }
+
+    /**
+     * Opens a batch. Batches may be nested; writes are held until the outermost one ends.
+     */
+    public static void beginBatch() {
+        sBatchDepth++;
+    }
+
+    /**
+     * Closes a batch opened by {@link #beginBatch()}, and flushes every buffered write if it was the
+     * outermost one.
+     */
+    public static void endBatch() {
+        if (sBatchDepth == 0) {
+            throw new IllegalStateException("endBatch() called without a matching beginBatch()");
+        }
+        sBatchDepth--;
+        if (sBatchDepth == 0) {
+            flush();
+        }
+    }
+
+    /**
+     * @return true while a batch is open
+     */
+    public static boolean isBatching() {
+        return sBatchDepth > 0;
+    }
+
+    /**
+     * Buffers a write of {@code value} to {@code key}, replacing any write to the same key that
+     * hasn't been flushed yet.
+     */
+    public static void putInt(SharedPreferences preferences, String key, int value) {
+        put(preferences, key, value);
+    }
+
+    /**
+     * @see #putInt(SharedPreferences, String, int)
+     */
+    public static void putColor(ColorStore store, String key, int value) {
+        put(store, key, value);
+    }
+
+    private static void put(Object target, String key, int value) {
+        HashMap<String, Integer> writes = sPendingWrites.get(target);
+        if (writes == null) {
+            writes = new HashMap<>();
+            sPendingWrites.put(target, writes);
+        }
+        writes.put(key, value);
+        scheduleFlush();
+    }
+
+    /**
+     * @return the buffered value of {@code key}, or {@code defValue} if no write to it is
+     * buffered
+     */
+    public static int getInt(SharedPreferences preferences, String key, int defValue) {
+        return get(preferences, key, defValue);
+    }
+
+    /**
+     * @see #getInt(SharedPreferences, String, int)
+     */
+    public static int getColor(ColorStore store, String key, int defValue) {
+        return get(store, key, defValue);
+    }
+
+    private static int get(Object target, String key, int defValue) {
+        HashMap<String, Integer> writes = sPendingWrites.get(target);
+        Integer value = writes != null ? writes.get(key) : null;
+        return value != null ? value : defValue;
+    }
+
+    /**
+     * Runs {@code notification} once the buffered writes have been flushed. A notification that's
+     * already waiting isn't added again, so several writes to one preference notify it once.
+     */
+    public static void notifyAfterFlush(Runnable notification) {
+        if (!sPendingNotifications.contains(notification)) {
+            sPendingNotifications.add(notification);
+        }
+        scheduleFlush();
+    }
+
+    private static void scheduleFlush() {
+        if (sBatchDepth > 0 || sFlushPosted) {
+            return;
+        }
+        if (sHandler == null) {
+            sHandler = new Handler(Looper.getMainLooper());
+        }
+        sFlushPosted = true;
+        sHandler.post(sFlushRunnable);
+    }
+
+    /**
+     * Writes every buffered value and runs every waiting notification.
+     */
+    public static void flush() {
+        if (sFlushPosted) {
+            sHandler.removeCallbacks(sFlushRunnable);
+            sFlushPosted = false;
+        }
+
+        // Writing notifies change listeners synchronously, and a listener may write again. Each
+        // target's writes are taken out of the buffer before they're written, so that such writes
+        // are buffered for the next flush rather than modifying what's being iterated over.
+        ArrayList<Object> targets = new ArrayList<>(sPendingWrites.keySet());
+        for (Object target : targets) {
+            HashMap<String, Integer> writes = sPendingWrites.remove(target);
+            if (target instanceof ColorStore) {
+                ((ColorStore) target).putColors(writes);
+            } else {
+                SharedPreferences.Editor editor = ((SharedPreferences) target).edit();
+                for (Map.Entry<String, Integer> write : writes.entrySet()) {
+                    editor.putInt(write.getKey(), write.getValue());
+                }
+                editor.apply();
+            }
+        }
+
+        // Notifications may write again, which buffers those writes for the next flush
+        sNotificationsToRun.addAll(sPendingNotifications);
+        sPendingNotifications.clear();
+        for (int i = 0; i < sNotificationsToRun.size(); i++) {
+            sNotificationsToRun.get(i).run();
+        }
+        sNotificationsToRun.clear();
+    }
+}
@@ -0,0 +1,107 @@
+package com.thebluealliance.spectrum.internal;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+
+import java.util.ArrayList;
+
+/**
+ * Animates the checkmarks of the items whose selection changes. A palette owns a single instance
+ * that's reused for every selection change, and only the items that are being checked or
+ * unchecked are touched while it runs.
+ * <p/>
+ * For each selection change, the palette calls {@link #end()} to finish any animation that's
+ * still running, {@link #add(ColorItem, boolean)} for each item whose state changes, and then
+ * {@link #start()}. None of these allocate once the animator has seen as many items as a single
+ * selection change touches.
+ */
+public final class SelectionAnimator implements ValueAnimator.AnimatorUpdateListener {
+
+    private static final int DURATION = 250;
+
+    private final ValueAnimator mAnimator;
+    private final ArrayList<ColorItem> mCheckedItems = new ArrayList<>(2);
+    private final ArrayList<ColorItem> mUncheckedItems = new ArrayList<>(2);
+
+    public SelectionAnimator() {
+        mAnimator = ValueAnimator.ofFloat(0.0f, 1.0f);
+        mAnimator.setDuration(DURATION);
+        mAnimator.addUpdateListener(this);
+        mAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                finish();
+            }
+        });
+    }
+
+    /**
+     * Checks or unchecks the given item, and animates its checkmark from its old state when
+     * {@link #start()} is next called.
+     */
+    public void add(ColorItem item, boolean checked) {
+        item.setChecked(checked);
+        item.setCheckmarkProgress(checked ? 0.0f : 1.0f);
+        if (checked) {
+            mCheckedItems.add(item);
+        } else {
+            mUncheckedItems.add(item);
+        }
+    }
+
+    /**
+     * Stops animating the given item and jumps it to its final state. Used when an item is about
+     * to be rebound to a different color.
+     */
+    public void remove(ColorItem item) {
+        if (mCheckedItems.remove(item) || mUncheckedItems.remove(item)) {
+            finishItem(item);
+        }
+    }
+
+    public void start() {
+        if (mCheckedItems.isEmpty() && mUncheckedItems.isEmpty()) {
+            return;
+        }
+        mAnimator.start();
+    }
+
+    /**
+     * Jumps every item that's being animated to its final state.
+     */
+    public void end() {
+        if (mAnimator.isStarted()) {
+            // Calls finish() through the listener
+            mAnimator.end();
+        } else {
+            finish();
+        }
+    }
+
+    @Override
+    public void onAnimationUpdate(ValueAnimator animation) {
+        float progress = animation.getAnimatedFraction();
+        for (int i = 0; i < mCheckedItems.size(); i++) {
+            mCheckedItems.get(i).setCheckmarkProgress(progress);
+        }
+        for (int i = 0; i < mUncheckedItems.size(); i++) {
+            mUncheckedItems.get(i).setCheckmarkProgress(1.0f - progress);
+        }
+    }
+
+    private void finish() {
+        for (int i = 0; i < mCheckedItems.size(); i++) {
+            finishItem(mCheckedItems.get(i));
+        }
+        for (int i = 0; i < mUncheckedItems.size(); i++) {
+            finishItem(mUncheckedItems.get(i));
+        }
+        mCheckedItems.clear();
+        mUncheckedItems.clear();
+    }
+
+    private static void finishItem(ColorItem item) {
+        item.setCheckmarkProgress(item.isChecked() ? 1.0f : 0.0f);
+    }
+}
@@ -0,0 +1,63 @@
+package com.thebluealliance.spectrum.internal;
+
+import android.support.annotation.ColorInt;
+
+/**
+ * Tracks which color of a palette is selected. When the selection changes, only the positions
+ * that held the previously selected color and the positions that hold the newly selected color
+ * are reported, so the cost of a selection doesn't depend on the size of the palette.
+ */
+public class SelectionModel {
+
+    /**
+     * Receives a call for each position whose checked state changes.
+     */
+    public interface Callback {
+        void onItemCheckedChanged(int index, boolean checked);
+    }
+
+    private final Callback mCallback;
+    private ColorIndex mIndex;
+    private @ColorInt int mSelectedColor;
+
+    public SelectionModel(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Sets the colors of the palette. No callbacks are made; callers are expected to create their
+     * items with the current selection in mind.
+     *
+     * @param index an index of the palette's colors, or null if there aren't any
+     */
+    public void setIndex(ColorIndex index) {
+        mIndex = index;
+    }
+
+    public void setSelectedColor(@ColorInt int color) {
+        @ColorInt int oldColor = mSelectedColor;
+        mSelectedColor = color;
+        if (oldColor == color || mIndex == null) {
+            return;
+        }
+
+        for (int i = mIndex.indexOf(oldColor); i != -1; i = mIndex.nextIndexOf(i)) {
+            mCallback.onItemCheckedChanged(i, false);
+        }
+        for (int i = mIndex.indexOf(color); i != -1; i = mIndex.nextIndexOf(i)) {
+            mCallback.onItemCheckedChanged(i, true);
+        }
+    }
+
+    public @ColorInt int getSelectedColor() {
+        return mSelectedColor;
+    }
+
+    /**
+     * @return the first position that holds the selected color, or -1 if the selected color isn't
+     * in the palette
+     */
+    public int getSelectedIndex() {
+        return mIndex != null ? mIndex.indexOf(mSelectedColor) : -1;
+    }
+}
@@ -1,12 +1,16 @@
 package com.thebluealliance.spectrum.internal;
 
+import com.thebluealliance.spectrum.SpectrumMetrics;
 import com.thebluealliance.spectrum.SpectrumPalette;
 import com.thebluealliance.spectrum.R;
 import com.thebluealliance.spectrum.SpectrumPreferenceCompat;
 
+import android.app.Dialog;
 import android.content.DialogInterface;
 import android.os.Bundle;
 import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+import android.support.v4.os.TraceCompat;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.preference.PreferenceDialogFragmentCompat;
 import android.view.View;
@@ -15,6 +19,10 @@ public class SpectrumPreferenceDialogFragmentCompat extends PreferenceDialogFrag
 
     private SpectrumPalette mColorPalette;
     private @ColorInt int mCurrentValue;
+    /**
+     * When this dialog started being created, or 0 if no {@link SpectrumMetrics} are installed
+     */
+    private long mShowStartNanos = 0;
 
     public static SpectrumPreferenceDialogFragmentCompat newInstance(String key) {
         final SpectrumPreferenceDialogFragmentCompat fragment =
@@ -25,6 +33,21 @@ public class SpectrumPreferenceDialogFragmentCompat extends PreferenceDialogFrag
         return fragment;
     }
 
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        mShowStartNanos = Instrumentation.getMetrics() != null ? System.nanoTime() : 0;
+        super.onCreate(savedInstanceState);
+    }
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        TraceCompat.beginSection("Spectrum:SpectrumPreferenceDialogFragmentCompat.onCreateDialog");
+        Dialog dialog = super.onCreateDialog(savedInstanceState);
+        TraceCompat.endSection();
+        return dialog;
+    }
+
     private SpectrumPreferenceCompat getSpectrumPreference() {
         return (SpectrumPreferenceCompat) getPreference();
     }
@@ -44,17 +67,19 @@ public class SpectrumPreferenceDialogFragmentCompat extends PreferenceDialogFrag
 
         final SpectrumPreferenceCompat preference = getSpectrumPreference();
 
-        if (preference.getColors() == null) {
+        if (preference.getPalette() == null) {
             throw new RuntimeException("SpectrumPreference requires a colors array");
         }
 
         mCurrentValue = preference.getColor();
 
         mColorPalette = (SpectrumPalette) view.findViewById(R.id.palette);
-        mColorPalette.setColors(getSpectrumPreference().getColors());
+        mColorPalette.setColors(getSpectrumPreference().getPalette());
         mColorPalette.setSelectedColor(mCurrentValue);
         mColorPalette.setOutlineWidth(getSpectrumPreference().getOutlineWidth());
         mColorPalette.setFixedColumnCount(getSpectrumPreference().getFixedColumnCount());
+        Instrumentation.trackDialogShown(mColorPalette, SpectrumMetrics.DIALOG_PREFERENCE_COMPAT,
+                preference.getPalette().size(), mShowStartNanos);
         mColorPalette.setOnColorSelectedListener(new SpectrumPalette.OnColorSelectedListener() {
             @Override
             public void onColorSelected(@ColorInt int color) {
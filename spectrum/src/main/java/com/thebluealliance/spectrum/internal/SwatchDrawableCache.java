@@ -0,0 +1,211 @@
+package com.thebluealliance.spectrum.internal;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+import android.graphics.drawable.RippleDrawable;
+import android.graphics.drawable.StateListDrawable;
+import android.os.Build;
+import android.support.annotation.ColorInt;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.os.TraceCompat;
+import android.support.v4.util.LruCache;
+
+import com.thebluealliance.spectrum.R;
+import com.thebluealliance.spectrum.SpectrumMetrics;
+
+/**
+ * Process-wide cache of the drawables used by {@link ColorItem}s. Palettes tend to reuse the same
+ * colors across many items and screens, so rather than building new drawables for every item,
+ * a prototype is built once per (color, outline width, shape, API path) and items get their own
+ * instances from its {@link Drawable.ConstantState}, which they share.
+ * <p/>
+ * Entries are dropped when the system reports memory pressure.
+ */
+public final class SwatchDrawableCache {
+
+    private static final int MAX_SIZE = 256;
+    /**
+     * Each color has a background and a foreground entry
+     */
+    private static final int ENTRIES_PER_COLOR = 2;
+    private static final int CHECKMARK_ENTRIES = 2;
+
+    private static final int TYPE_BACKGROUND = 0;
+    private static final int TYPE_RIPPLE = 1;
+    private static final int TYPE_PRESSED_STATE_LIST = 2;
+    private static final int TYPE_CHECKMARK = 3;
+
+    private static final int SHAPE = GradientDrawable.OVAL;
+
+    private static final LruCache<Long, Drawable.ConstantState> sCache = new LruCache<>(MAX_SIZE);
+
+    private static boolean sRegisteredForTrimMemory = false;
+
+    private SwatchDrawableCache() {
+        // Util class
+    }
+
+    /**
+     * @return a drawable that fills an item with {@code color}, outlined if {@code outlineWidth}
+     * isn't 0
+     */
+    public static Drawable getBackground(Context context, @ColorInt int color, int outlineWidth) {
+        long key = key(TYPE_BACKGROUND, outlineWidth, color);
+        Drawable.ConstantState state = sCache.get(key);
+        if (state == null) {
+            long start = beginCreate();
+            GradientDrawable background = new GradientDrawable();
+            background.setShape(SHAPE);
+            if (outlineWidth != 0) {
+                background.setStroke(outlineWidth, ColorUtil.isColorDark(color) ? Color.WHITE : Color.BLACK);
+            }
+            background.setColor(color);
+            state = put(context, key, background);
+            endCreate(start);
+        }
+        return state.newDrawable(context.getResources());
+    }
+
+    /**
+     * @return a drawable that shows touch feedback on top of an item with {@code color}; a ripple
+     * on Lollipop and above, and a translucent overlay when pressed on older versions
+     */
+    public static Drawable getForeground(Context context, @ColorInt int color) {
+        Resources resources = context.getResources();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            long key = key(TYPE_RIPPLE, 0, color);
+            Drawable.ConstantState state = sCache.get(key);
+            if (state == null) {
+                long start = beginCreate();
+                GradientDrawable mask = new GradientDrawable();
+                mask.setShape(SHAPE);
+                mask.setColor(Color.BLACK);
+                state = put(context, key, new RippleDrawable(ColorStateList.valueOf(ColorUtil.getRippleColor(color)), null, mask));
+                endCreate(start);
+            }
+            // Ripples get their own copies of their layers, so instances can share their state
+            return state.newDrawable(resources);
+        } else {
+            long key = key(TYPE_PRESSED_STATE_LIST, 0, color);
+            Drawable.ConstantState state = sCache.get(key);
+            if (state == null) {
+                long start = beginCreate();
+                StateListDrawable foreground = new StateListDrawable();
+                foreground.setAlpha(80);
+                foreground.setEnterFadeDuration(250);
+                foreground.setExitFadeDuration(250);
+
+                GradientDrawable mask = new GradientDrawable();
+                mask.setShape(SHAPE);
+                mask.setColor(ColorUtil.getRippleColor(color));
+                foreground.addState(new int[]{android.R.attr.state_pressed}, mask);
+
+                foreground.addState(new int[]{}, new ColorDrawable(Color.TRANSPARENT));
+                state = put(context, key, foreground);
+                endCreate(start);
+            }
+            // State list instances would otherwise share their children, and with them the fade
+            // between states
+            return state.newDrawable(resources).mutate();
+        }
+    }
+
+    /**
+     * @return the checkmark shown on a selected item, tinted white for dark colors and black for
+     * light ones. Instances share the decoded and tinted bitmap, so callers should set the alpha
+     * and bounds they need right before drawing.
+     */
+    public static Drawable getCheckmark(Context context, boolean isColorDark) {
+        @ColorInt int tint = isColorDark ? Color.WHITE : Color.BLACK;
+        long key = key(TYPE_CHECKMARK, 0, tint);
+        Drawable.ConstantState state = sCache.get(key);
+        if (state == null) {
+            long start = beginCreate();
+            Drawable checkmark = ContextCompat.getDrawable(context, R.drawable.ic_check_white_24dp).mutate();
+            checkmark.setColorFilter(new PorterDuffColorFilter(tint, PorterDuff.Mode.SRC_ATOP));
+            state = put(context, key, checkmark);
+            endCreate(start);
+        }
+        return state.newDrawable(context.getResources());
+    }
+
+    /**
+     * @return how many colors' drawables fit in the cache along with both checkmarks; caching
+     * more evicts the least recently used ones
+     */
+    public static int getColorCapacity() {
+        return (MAX_SIZE - CHECKMARK_ENTRIES) / ENTRIES_PER_COLOR;
+    }
+
+    /**
+     * Marks the start of building a drawable that isn't cached yet.
+     *
+     * @return the start time to pass to {@link #endCreate(long)}, or 0 if no metrics are installed
+     */
+    private static long beginCreate() {
+        TraceCompat.beginSection("Spectrum:createDrawable");
+        return Instrumentation.getMetrics() != null ? System.nanoTime() : 0;
+    }
+
+    private static void endCreate(long start) {
+        TraceCompat.endSection();
+        SpectrumMetrics metrics = Instrumentation.getMetrics();
+        if (metrics != null && start != 0) {
+            metrics.onDrawableCreated(System.nanoTime() - start);
+        }
+    }
+
+    private static Drawable.ConstantState put(Context context, long key, Drawable prototype) {
+        registerForTrimMemory(context);
+        Drawable.ConstantState state = prototype.mutate().getConstantState();
+        sCache.put(key, state);
+        return state;
+    }
+
+    private static long key(int type, int outlineWidth, @ColorInt int color) {
+        return ((long) type << 56) | ((long) SHAPE << 48) | ((long) (outlineWidth & 0xFFFF) << 32) | (color & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Drops every cached drawable.
+     */
+    public static void clear() {
+        sCache.evictAll();
+    }
+
+    private static void registerForTrimMemory(Context context) {
+        if (sRegisteredForTrimMemory) {
+            return;
+        }
+        sRegisteredForTrimMemory = true;
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW
+                        || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+                    clear();
+                    ColorItemPool.clear();
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                clear();
+                ColorItemPool.clear();
+            }
+        });
+    }
+}
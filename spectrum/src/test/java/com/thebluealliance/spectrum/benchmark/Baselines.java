@@ -0,0 +1,137 @@
+package com.thebluealliance.spectrum.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The committed results that benchmarks are compared against, in
+ * {@code src/test/resources/benchmark-baselines.properties}. Each benchmark must have a
+ * {@code <name>.bytes} entry; allocations barely vary between machines, so a benchmark without one
+ * fails rather than passing unchecked. Timings do vary, so {@code <name>.nanos} entries are
+ * optional, and only checked where present. Until any baselines have been recorded, the
+ * benchmarks are skipped rather than failing every check.
+ * <p/>
+ * When the {@code spectrum.benchmarks.record} system property holds the path of the baselines
+ * file, results are written to it instead of being compared.
+ */
+final class Baselines {
+
+    private static final String RESOURCE = "/benchmark-baselines.properties";
+
+    private static final String HEADER = ""
+            + "# Baselines for the benchmarks in PaletteBenchmarkTest. Every benchmark needs a <name>.bytes entry,\n"
+            + "# and fails without one; <name>.nanos entries are optional, since timings depend on the machine.\n"
+            + "# While this file has no entries, the benchmarks are skipped.\n"
+            + "# Record with ./gradlew :spectrum:testDebugUnitTest -PrecordBenchmarks\n";
+
+    /**
+     * How much slower than its baseline a benchmark may get before it fails. Time is noisy, so this
+     * is generous.
+     */
+    private static final double TIME_TOLERANCE = Double.parseDouble(
+            System.getProperty("spectrum.benchmarks.timeTolerance", "0.5"));
+
+    /**
+     * How many more bytes than its baseline a benchmark may allocate before it fails
+     */
+    private static final double ALLOCATION_TOLERANCE = Double.parseDouble(
+            System.getProperty("spectrum.benchmarks.allocationTolerance", "0.1"));
+
+    private final Properties mBaselines = new Properties();
+    private final File mRecordFile;
+
+    Baselines() throws IOException {
+        String recordPath = System.getProperty("spectrum.benchmarks.record");
+        mRecordFile = recordPath != null && !recordPath.isEmpty() ? new File(recordPath) : null;
+        InputStream in = mRecordFile != null && mRecordFile.exists()
+                ? new FileInputStream(mRecordFile) : Baselines.class.getResourceAsStream(RESOURCE);
+        if (in != null) {
+            try {
+                mBaselines.load(in);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    boolean isRecording() {
+        return mRecordFile != null;
+    }
+
+    /**
+     * @return true if no baselines have been recorded yet
+     */
+    boolean isEmpty() {
+        return mBaselines.isEmpty();
+    }
+
+    /**
+     * @return a description of how {@code result} regressed from its baseline or why it couldn't
+     * be checked, or null if it's within tolerance
+     */
+    String check(BenchmarkRunner.Result result) {
+        StringBuilder regression = new StringBuilder();
+        long baselineNanos = getLong(result.mName + ".nanos");
+        if (baselineNanos > 0 && result.mNanos > baselineNanos * (1 + TIME_TOLERANCE)) {
+            regression.append(String.format("%s took %.3f ms, baseline %.3f ms", result.mName,
+                    result.mNanos / 1e6, baselineNanos / 1e6));
+        }
+        long baselineBytes = getLong(result.mName + ".bytes");
+        String allocationRegression = null;
+        if (baselineBytes == -1) {
+            allocationRegression = String.format("%s has no %s.bytes baseline; record one with -PrecordBenchmarks",
+                    result.mName, result.mName);
+        } else if (result.mAllocatedBytes == -1) {
+            allocationRegression = String.format("%s couldn't be checked, this JVM can't count allocations",
+                    result.mName);
+        } else if (result.mAllocatedBytes > baselineBytes * (1 + ALLOCATION_TOLERANCE)) {
+            allocationRegression = String.format("%s allocated %d B, baseline %d B", result.mName,
+                    result.mAllocatedBytes, baselineBytes);
+        }
+        if (allocationRegression != null) {
+            if (regression.length() > 0) {
+                regression.append("; ");
+            }
+            regression.append(allocationRegression);
+        }
+        return regression.length() > 0 ? regression.toString() : null;
+    }
+
+    /**
+     * Writes {@code result} to the baselines file, keeping the entries of other benchmarks.
+     */
+    void record(BenchmarkRunner.Result result) throws IOException {
+        mBaselines.setProperty(result.mName + ".nanos", Long.toString(result.mNanos));
+        if (result.mAllocatedBytes != -1) {
+            mBaselines.setProperty(result.mName + ".bytes", Long.toString(result.mAllocatedBytes));
+        }
+
+        // Sorted, so that re-recording gives a readable diff
+        TreeMap<String, String> sorted = new TreeMap<>();
+        for (String name : mBaselines.stringPropertyNames()) {
+            sorted.put(name, mBaselines.getProperty(name));
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(mRecordFile), "ISO-8859-1");
+        try {
+            out.write(HEADER);
+            for (Map.Entry<String, String> entry : sorted.entrySet()) {
+                out.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private long getLong(String key) {
+        String value = mBaselines.getProperty(key);
+        return value != null ? Long.parseLong(value.trim()) : -1;
+    }
+}
@@ -0,0 +1,100 @@
+package com.thebluealliance.spectrum.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Times an operation and counts the bytes it allocates on the calling thread. The operation is run
+ * a number of times to warm up, then measured over a number of iterations; the medians are
+ * reported, which keeps the odd GC pause or class load from skewing the results.
+ */
+final class BenchmarkRunner {
+
+    private static final int WARMUP_ITERATIONS = Integer.getInteger("spectrum.benchmarks.warmupIterations", 10);
+    private static final int ITERATIONS = Integer.getInteger("spectrum.benchmarks.iterations", 30);
+
+    private BenchmarkRunner() {
+        // Util class
+    }
+
+    /**
+     * An operation to measure. Only {@link #run()} is measured; {@link #setUp()} and
+     * {@link #tearDown()} are run around every iteration, warm-up included.
+     */
+    abstract static class Operation {
+        void setUp() {
+        }
+
+        abstract void run();
+
+        void tearDown() {
+        }
+    }
+
+    static final class Result {
+        final String mName;
+        final long mNanos;
+        /**
+         * -1 if the JVM can't count allocations
+         */
+        final long mAllocatedBytes;
+
+        Result(String name, long nanos, long allocatedBytes) {
+            mName = name;
+            mNanos = nanos;
+            mAllocatedBytes = allocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-40s %10.3f ms %12s", mName, mNanos / 1e6,
+                    mAllocatedBytes != -1 ? mAllocatedBytes + " B" : "n/a");
+        }
+    }
+
+    static Result run(String name, Operation operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            operation.setUp();
+            operation.run();
+            operation.tearDown();
+        }
+
+        long[] nanos = new long[ITERATIONS];
+        long[] allocatedBytes = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            operation.setUp();
+            long bytesBefore = getAllocatedBytes();
+            long start = System.nanoTime();
+            operation.run();
+            nanos[i] = System.nanoTime() - start;
+            long bytesAfter = getAllocatedBytes();
+            allocatedBytes[i] = bytesBefore != -1 ? bytesAfter - bytesBefore : -1;
+            operation.tearDown();
+        }
+
+        return new Result(name, median(nanos), median(allocatedBytes));
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * @return the number of bytes the calling thread has allocated so far, or -1 if the JVM can't
+     * tell
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean hotspotBean = (com.sun.management.ThreadMXBean) bean;
+        if (!hotspotBean.isThreadAllocatedMemorySupported() || !hotspotBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return hotspotBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
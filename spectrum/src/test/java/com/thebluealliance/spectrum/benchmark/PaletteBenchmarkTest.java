@@ -0,0 +1,261 @@
+package com.thebluealliance.spectrum.benchmark;
+
+import com.thebluealliance.spectrum.BuildConfig;
+import com.thebluealliance.spectrum.CompiledPalette;
+import com.thebluealliance.spectrum.R;
+import com.thebluealliance.spectrum.SpectrumDialog;
+import com.thebluealliance.spectrum.SpectrumPalette;
+import com.thebluealliance.spectrum.internal.ColorItem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ActivityController;
+
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Host-side benchmarks for building, measuring and laying out palettes, and for opening a
+ * {@link SpectrumDialog}. Each result is compared against its committed baseline, and a test fails
+ * if any of its benchmarks regressed beyond the tolerance or has no allocation baseline, with every
+ * result of the test in the failure message; see {@link Baselines}.
+ * <p/>
+ * Skipped unless run with {@code ./gradlew :spectrum:testDebugUnitTest -Pbenchmarks}, and until
+ * baselines have been recorded with {@code -PrecordBenchmarks}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PaletteBenchmarkTest {
+
+    private static final int[] PALETTE_SIZES = {16, 256, 1024};
+    private static final int[] COLUMN_COUNTS = {4, 8};
+    private static final int[] MODES = {
+            SpectrumPalette.MODE_STANDARD, SpectrumPalette.MODE_VIRTUALIZED, SpectrumPalette.MODE_CANVAS};
+    private static final String[] MODE_NAMES = {"standard", "virtualized", "canvas"};
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private FragmentActivity mActivity;
+    private FrameLayout mContainer;
+    private Baselines mBaselines;
+    private final List<BenchmarkRunner.Result> mResults = new ArrayList<>();
+    private final List<String> mRegressions = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(Boolean.getBoolean("spectrum.benchmarks"));
+        mBaselines = new Baselines();
+        assumeTrue("No benchmark baselines have been recorded; record them with -PrecordBenchmarks",
+                mBaselines.isRecording() || !mBaselines.isEmpty());
+
+        ActivityController<FragmentActivity> controller = Robolectric.buildActivity(FragmentActivity.class);
+        // SpectrumDialog needs an AppCompat theme
+        controller.get().setTheme(R.style.Theme_AppCompat_Light);
+        mActivity = controller.create().start().resume().visible().get();
+        mContainer = new FrameLayout(mActivity);
+        mActivity.setContentView(mContainer);
+    }
+
+    @After
+    public void checkRegressions() {
+        if (!mRegressions.isEmpty()) {
+            StringBuilder message = new StringBuilder("Benchmarks regressed or couldn't be checked:");
+            for (String regression : mRegressions) {
+                message.append("\n  ").append(regression);
+            }
+            message.append("\nResults:");
+            for (BenchmarkRunner.Result result : mResults) {
+                message.append("\n  ").append(result);
+            }
+            fail(message.toString());
+        }
+    }
+
+    /**
+     * Creating a palette and its views from scratch, then measuring and laying it out, as when a
+     * dialog or screen opens
+     */
+    @Test
+    public void buildPalette() throws IOException {
+        for (int m = 0; m < MODES.length; m++) {
+            final int mode = MODES[m];
+            for (int size : PALETTE_SIZES) {
+                final CompiledPalette colors = createPalette(size);
+                for (final int columns : COLUMN_COUNTS) {
+                    measure("build." + MODE_NAMES[m] + "." + size + "x" + columns, new BenchmarkRunner.Operation() {
+                        private SpectrumPalette mPalette;
+
+                        @Override
+                        void run() {
+                            mPalette = new SpectrumPalette(mActivity);
+                            mPalette.setPaletteMode(mode);
+                            mPalette.setFixedColumnCount(columns);
+                            mPalette.setColors(colors);
+                            mContainer.addView(mPalette);
+                            measureAndLayout(mPalette);
+                        }
+
+                        @Override
+                        void tearDown() {
+                            // Returns the palette's items to the shared pool, as closing a screen
+                            // would, if it has room for all of them. Palettes release their items
+                            // after a delay, which the scheduler's clock only reaches when it's
+                            // told to run delayed tasks.
+                            mContainer.removeView(mPalette);
+                            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Creating the views for a palette's colors, without laying them out
+     */
+    @Test
+    public void createColorItems() throws IOException {
+        for (int size : PALETTE_SIZES) {
+            final int[] colors = createPalette(size).getColors();
+            measure("colorItems.create." + size, new BenchmarkRunner.Operation() {
+                @Override
+                void run() {
+                    for (int color : colors) {
+                        new ColorItem(mActivity, color, false, null);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * A measure pass over a palette whose views already exist
+     */
+    @Test
+    public void measurePalette() throws IOException {
+        for (int size : PALETTE_SIZES) {
+            for (int columns : COLUMN_COUNTS) {
+                final SpectrumPalette palette = attachPalette(size, columns);
+                measure("measure." + size + "x" + columns, new BenchmarkRunner.Operation() {
+                    @Override
+                    void run() {
+                        palette.forceLayout();
+                        palette.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.AT_MOST));
+                    }
+                });
+                mContainer.removeView(palette);
+            }
+        }
+    }
+
+    /**
+     * Switching an existing palette between column counts, which rearranges its views
+     */
+    @Test
+    public void relayoutPalette() throws IOException {
+        for (int size : PALETTE_SIZES) {
+            final SpectrumPalette palette = attachPalette(size, COLUMN_COUNTS[0]);
+            measure("relayout." + size + "." + COLUMN_COUNTS[0] + "to" + COLUMN_COUNTS[1],
+                    new BenchmarkRunner.Operation() {
+                        @Override
+                        void run() {
+                            palette.setFixedColumnCount(COLUMN_COUNTS[1]);
+                            measureAndLayout(palette);
+                        }
+
+                        @Override
+                        void tearDown() {
+                            palette.setFixedColumnCount(COLUMN_COUNTS[0]);
+                            measureAndLayout(palette);
+                        }
+                    });
+            mContainer.removeView(palette);
+        }
+    }
+
+    /**
+     * Showing a {@link SpectrumDialog}, which runs {@link SpectrumDialog#onCreateDialog} and builds
+     * its palette
+     */
+    @Test
+    public void showDialog() throws IOException {
+        final FragmentManager fragmentManager = mActivity.getSupportFragmentManager();
+        for (int size : PALETTE_SIZES) {
+            final CompiledPalette colors = createPalette(size);
+            measure("dialog.show." + size, new BenchmarkRunner.Operation() {
+                private SpectrumDialog mDialog;
+
+                @Override
+                void setUp() {
+                    mDialog = new SpectrumDialog.Builder(mActivity)
+                            .setColors(colors)
+                            .setSelectedColor(colors.getColor(0))
+                            .build();
+                }
+
+                @Override
+                void run() {
+                    mDialog.show(fragmentManager, "benchmark");
+                    fragmentManager.executePendingTransactions();
+                }
+
+                @Override
+                void tearDown() {
+                    mDialog.dismiss();
+                    fragmentManager.executePendingTransactions();
+                }
+            });
+        }
+    }
+
+    private void measure(String name, BenchmarkRunner.Operation operation) throws IOException {
+        BenchmarkRunner.Result result = BenchmarkRunner.run(name, operation);
+        if (mBaselines.isRecording()) {
+            // Shows what was written to the baselines file, for the diff to be reviewed against
+            System.out.println(result);
+            mBaselines.record(result);
+            return;
+        }
+        mResults.add(result);
+        String regression = mBaselines.check(result);
+        if (regression != null) {
+            mRegressions.add(regression);
+        }
+    }
+
+    private SpectrumPalette attachPalette(int size, int columns) {
+        SpectrumPalette palette = new SpectrumPalette(mActivity);
+        palette.setFixedColumnCount(columns);
+        palette.setColors(createPalette(size));
+        mContainer.addView(palette);
+        measureAndLayout(palette);
+        return palette;
+    }
+
+    private static void measureAndLayout(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.AT_MOST));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    private static CompiledPalette createPalette(int size) {
+        return CompiledPalette.compile(Palettes.randomColors(size));
+    }
+}
@@ -0,0 +1,27 @@
+package com.thebluealliance.spectrum.benchmark;
+
+import java.util.Random;
+
+/**
+ * Palettes shared by the JMH benchmarks in {@code :benchmark}, which compile this file from here,
+ * and the host-side benchmarks in this source set, so that both measure the same colors. Must not
+ * depend on the Android framework.
+ */
+final class Palettes {
+
+    private Palettes() {
+        // Util class
+    }
+
+    /**
+     * @return opaque colors from a fixed seed, so that every run measures the same palette
+     */
+    static int[] randomColors(int count) {
+        Random random = new Random(42);
+        int[] colors = new int[count];
+        for (int i = 0; i < count; i++) {
+            colors[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return colors;
+    }
+}
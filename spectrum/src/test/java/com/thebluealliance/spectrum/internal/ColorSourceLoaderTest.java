@@ -0,0 +1,128 @@
+package com.thebluealliance.spectrum.internal;
+
+import com.thebluealliance.spectrum.BuildConfig;
+import com.thebluealliance.spectrum.ColorSource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ColorSourceLoaderTest {
+
+    private static final int[] COLORS = {0xFF000000, 0xFF0000FF, 0xFF00FF00, 0xFFFF0000};
+
+    /**
+     * Serves {@link #COLORS}, either from the calling thread or from a thread of its own
+     */
+    private static final class TestColorSource implements ColorSource {
+        private final boolean mBackground;
+        private final List<Integer> mOffsets = new ArrayList<>();
+
+        TestColorSource(boolean background) {
+            mBackground = background;
+        }
+
+        @Override
+        public int getCount() {
+            return COLORS.length;
+        }
+
+        @Override
+        public void loadPage(int offset, int pageSize, @NonNull final PageCallback callback) {
+            mOffsets.add(offset);
+            final int[] page = new int[pageSize];
+            System.arraycopy(COLORS, offset, page, 0, pageSize);
+            final boolean endReached = offset + pageSize == COLORS.length;
+            if (!mBackground) {
+                callback.onPageLoaded(page, endReached);
+                return;
+            }
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onPageLoaded(page, endReached);
+                }
+            });
+            thread.start();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private static final class RecordingListener implements ColorSourceLoader.Listener {
+        final List<int[]> mPages = new ArrayList<>();
+
+        @Override
+        public void onColorsLoaded(int[] colors) {
+            mPages.add(colors);
+        }
+    }
+
+    @Test
+    public void loadsPagesDeliveredOnMainThread() {
+        TestColorSource source = new TestColorSource(false);
+        RecordingListener listener = new RecordingListener();
+        ColorSourceLoader loader = new ColorSourceLoader(source, 2, listener);
+
+        loader.loadNextPage();
+        assertFalse(loader.isLoading());
+        assertFalse(loader.isEndReached());
+        loader.loadNextPage();
+
+        assertEquals(2, listener.mPages.size());
+        assertArrayEquals(new int[]{COLORS[0], COLORS[1]}, listener.mPages.get(0));
+        assertArrayEquals(new int[]{COLORS[2], COLORS[3]}, listener.mPages.get(1));
+        assertEquals(2, (int) source.mOffsets.get(1));
+        assertTrue(loader.isEndReached());
+    }
+
+    @Test
+    public void loadsPagesDeliveredOnOtherThreads() {
+        TestColorSource source = new TestColorSource(true);
+        RecordingListener listener = new RecordingListener();
+        ColorSourceLoader loader = new ColorSourceLoader(source, 2, listener);
+
+        loader.loadNextPage();
+        // The page is posted to the main thread
+        assertTrue(loader.isLoading());
+        ShadowLooper.idleMainLooper();
+        assertFalse(loader.isLoading());
+        loader.loadNextPage();
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(2, listener.mPages.size());
+        assertArrayEquals(new int[]{COLORS[0], COLORS[1]}, listener.mPages.get(0));
+        assertArrayEquals(new int[]{COLORS[2], COLORS[3]}, listener.mPages.get(1));
+        assertTrue(loader.isEndReached());
+    }
+
+    @Test
+    public void dropsPagesDeliveredAfterCancel() {
+        TestColorSource source = new TestColorSource(true);
+        RecordingListener listener = new RecordingListener();
+        ColorSourceLoader loader = new ColorSourceLoader(source, 2, listener);
+
+        loader.loadNextPage();
+        loader.cancel();
+        ShadowLooper.idleMainLooper();
+
+        assertTrue(listener.mPages.isEmpty());
+    }
+}